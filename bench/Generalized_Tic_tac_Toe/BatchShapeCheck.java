@@ -0,0 +1,154 @@
+package Generalized_Tic_tac_Toe;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that BatchAnalysis answers correctly when the positions of one batch
+ * have different shapes, which all share the transposition table of the
+ * advanced search.
+ *
+ * The batch mixes positions of 3x3 and 4x4 boards, whose game values are
+ * known from PositionDatabase, with positions of larger boards that only fill
+ * the table. Every small position whose search found a win or a loss, or
+ * reached the end of the game, must get a move that keeps the game value and
+ * a score that agrees with it.
+ * The batch is run in several orders, so the table holds different entries
+ * each time a position is searched.
+ *
+ * Usage: BatchShapeCheck [positions [threads [seed]]]
+ */
+public class BatchShapeCheck {
+
+    private static final int[][] SMALL_SHAPES = {{3, 3}, {4, 3}, {4, 4}};
+    private static final int[][] LARGE_SHAPES = {{7, 4}, {15, 5}};
+    private static final int ORDERS = 3;
+
+    // Deep enough to finish any 4x4 game; the budget stops the large boards.
+    private static final int PLY = 16;
+    private static final Duration BUDGET = Duration.ofMillis(1000);
+
+    /**
+     * Play random moves on an empty board.
+     * @param width     the number of rows and columns
+     * @param m         the number of stones in a row that wins
+     * @param moves     the number of moves
+     * @param random    the source of the moves
+     * @return          the input line of the position, or null if the game ended
+     */
+    private static String position (int width, int m, int moves, java.util.Random random) {
+        Board board = new Board(width, m);
+        StringBuilder line = new StringBuilder(width + " " + m);
+        for (int i = 0; i < moves; i++) {
+            int move;
+            do {
+                move = random.nextInt(width * width);
+            } while (board.getCell(move) != Board.State.Blank);
+            board.move(move);
+            line.append(' ').append(move);
+            if (board.isGameOver()) {
+                return null;
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Check one output line of a small position against its database.
+     * @param input     the input line
+     * @param output    the output line
+     * @return          1 if the answer is wrong, 0 if it is right, -1 if the search stopped short of a draw
+     */
+    private static int check (String input, String output) {
+        String[] fields = output.split("\t");
+        if (fields[1].equals("error")) {
+            System.out.println("error on " + input + ": " + fields[2]);
+            return 1;
+        }
+
+        Board board = BatchAnalysis.parse(input);
+        int move = Integer.parseInt(fields[1]);
+        int score = Integer.parseInt(fields[2]);
+        int depth = Integer.parseInt(fields[3]);
+
+        // A win or a loss is exact at any depth, a draw only at the end of the game.
+        int found = (score >= Integer.MAX_VALUE - 1000) ? 1 : (score <= Integer.MIN_VALUE + 1000) ? -1 : 0;
+        if (found == 0 && depth < board.getAvailableMoves().size()) {
+            return -1;
+        }
+
+        PositionDatabase database = PositionDatabase.of(board.getBoardWidth(), board.getWinLength());
+        int value = database.value(board);
+        int expected = (value == PositionDatabase.DRAW) ? 0 : (value == PositionDatabase.WIN) == (board.getTurn() == Board.State.O) ? 1 : -1;
+
+        // The value of the position after the move, for the player who made it.
+        Board played = board.getDeepCopy();
+        played.move(move);
+        int after = !played.isGameOver() ? PositionDatabase.WIN + PositionDatabase.LOSS - database.value(played)
+                : played.getWinner() == board.getTurn() ? PositionDatabase.WIN : PositionDatabase.DRAW;
+
+        if (found != expected || after != value) {
+            System.out.println("wrong on " + input + ": move " + move + ", score " + score);
+            return 1;
+        }
+        return 0;
+    }
+
+    public static void main (String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        java.util.Random random = new java.util.Random(args.length > 2 ? Long.parseLong(args[2]) : 1);
+
+        List<String> lines = new ArrayList<>();
+        while (lines.size() < count) {
+            boolean small = lines.size() % 3 != 2;
+            int[][] shapes = small ? SMALL_SHAPES : LARGE_SHAPES;
+            int[] shape = shapes[random.nextInt(shapes.length)];
+            int cells = shape[0] * shape[0];
+            String line = position(shape[0], shape[1], small ? 1 + random.nextInt(cells - 2) : 2 + random.nextInt(6), random);
+            if (line != null) {
+                lines.add(line);
+            }
+        }
+
+        AlphaBetaAdvanced.setVerbose(false);
+        int wrong = 0;
+        int checked = 0;
+        int unfinished = 0;
+        for (int order = 0; order < ORDERS; order++) {
+            if (order > 0) {
+                Collections.shuffle(lines, random);
+            }
+            StringBuilder input = new StringBuilder();
+            for (String line : lines) {
+                input.append(line).append('\n');
+            }
+            StringWriter output = new StringWriter();
+            new BatchAnalysis(PLY, BUDGET, threads, 4 * threads).run(new StringReader(input.toString()), output);
+
+            String[] results = output.toString().split("\n");
+            for (int i = 0; i < lines.size(); i++) {
+                if (BatchAnalysis.parse(lines.get(i)).getBoardWidth() > 4) {
+                    continue;
+                }
+                int result = check(lines.get(i), results[i]);
+                if (result < 0) {
+                    unfinished++;
+                } else {
+                    checked++;
+                    wrong += result;
+                }
+            }
+        }
+
+        System.out.printf("%d small positions checked, %d wrong, %d not searched to the end.%n", checked, wrong, unfinished);
+        if (wrong > 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Microbenchmarks of the hot paths of Board and of fixed-depth searches, on
+ * early, middle and late game positions of a 15x15 board with 5 in a row.
+ *
+ * Each benchmark runs a few warm-up iterations so the JIT compiler settles,
+ * then a number of measured iterations, and reports the median time per
+ * operation, the bytes allocated per operation (from the thread allocation
+ * counter of HotSpot, when available) and, for searches, nodes per second.
+ * Searches start from an empty transposition table and include the threat
+ * search, whose nodes are not counted, so nodes per second is the full width
+ * nodes over the whole time of the move. For Monte Carlo Tree Search, which
+ * runs on one thread here, the nodes are the playouts.
+ *
+ * The results can be saved and later used as a baseline. Run against a
+ * baseline, the program exits with status 1 if any benchmark got slower than
+ * the tolerance allows, so it can stop a regression from being merged.
+ *
+ * With --threads, for example "--threads 1,2,4,8", the searches also run on
+ * each of those numbers of Lazy SMP threads, and a table at the end gives for
+ * each position the speedup of the time to reach the depth over one thread,
+ * and the nodes per second in total and per thread.
+ *
+ * Usage: Benchmark [--save file] [--baseline file] [--tolerance percent] [--filter text] [--threads counts]
+ */
+public class Benchmark {
+
+    // The corpus: moves from the empty board, X first. None of the positions
+    // is won, and none has a window with 4 stones. The JMH suite uses it too.
+    static final int[][] POSITIONS = {
+        {112, 159, 158, 67, 160, 70},
+        {112, 159, 125, 144, 80, 82, 81, 66, 97, 84, 115, 114, 109, 67, 143, 140},
+        {112, 143, 109, 125, 66, 69, 127, 160, 99, 115, 95, 144, 141, 157, 79, 145, 159, 96,
+         128, 85, 139, 81, 110, 98, 100, 154, 80, 49, 142, 114, 84, 140, 70, 155, 64, 126},
+    };
+    static final String[] PHASES = {"early", "mid", "late"};
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final long ITERATION_NANOS = 200_000_000L;
+    private static final int SEARCH_PLY = 4;
+    private static final int MCTS_PLAYOUTS = 2000;
+
+    // Results are folded into this so the JIT cannot drop the work.
+    static volatile long sink;
+
+    // The nodes searched during the current iteration.
+    private static long searchNodes;
+
+    // The number of threads AlphaBetaAdvanced searches on.
+    private static int searchThreads = 1;
+
+    /**
+     * A piece of work to time. One call performs some number of operations.
+     */
+    private interface Operation {
+
+        /**
+         * Run the work once.
+         * @return          the number of operations performed
+         */
+        long run ();
+    }
+
+    /**
+     * Benchmark cannot be instantiated.
+     */
+    private Benchmark () {}
+
+    /**
+     * Build a position of the corpus by its phase.
+     * @param phase     early, mid or late
+     * @return          the board after the moves of the phase
+     */
+    static Board position (String phase) {
+        return position(POSITIONS[Arrays.asList(PHASES).indexOf(phase)]);
+    }
+
+    /**
+     * Build a position of the corpus.
+     * @param moves     the moves from the empty board
+     * @return          the board after the moves
+     */
+    private static Board position (int[] moves) {
+        Board board = new Board();
+        for (int move : moves) {
+            board.move(move);
+        }
+        return board;
+    }
+
+    /**
+     * Get the name of a search benchmark.
+     * @param phase     early, mid or late
+     * @param threads   the number of search threads
+     * @return          the name, which for one thread is the same as before threads could be set
+     */
+    private static String searchName (String phase, int threads) {
+        return "search.ply" + SEARCH_PLY + "." + (threads == 1 ? "" : "threads" + threads + ".") + phase;
+    }
+
+    /**
+     * Make AlphaBetaAdvanced search on a number of threads, starting its
+     * helper threads only when the number changes.
+     * @param threads   the number of threads
+     */
+    private static void useThreads (int threads) {
+        if (threads != searchThreads) {
+            AlphaBetaAdvanced.setThreadCount(threads);
+            searchThreads = threads;
+        }
+    }
+
+    /**
+     * List the benchmarks, by name.
+     * @param threadCounts  the numbers of threads to run the searches on
+     * @return              the benchmarks in the order they run
+     */
+    private static Map<String, Operation> benchmarks (int[] threadCounts) {
+        Map<String, Operation> benchmarks = new LinkedHashMap<>();
+
+        for (int p = 0; p < POSITIONS.length; p++) {
+            Board board = position(POSITIONS[p]);
+            int[] candidates = new int[225];
+            int candidateCount = board.copyCandidateMoves(candidates);
+            String phase = PHASES[p];
+
+            benchmarks.put("board.makeUnmake." + phase, () -> {
+                long sum = 0;
+                for (int i = 0; i < candidateCount; i++) {
+                    board.makeMove(candidates[i]);
+                    sum += board.getScoreO();
+                    board.unmakeMove();
+                }
+                sink += sum;
+                return candidateCount;
+            });
+            benchmarks.put("board.isWinningMove." + phase, () -> {
+                long sum = 0;
+                for (int i = 0; i < candidateCount; i++) {
+                    sum += board.isWinningMove(candidates[i], Board.State.X) ? 1 : 0;
+                }
+                sink += sum;
+                return candidateCount;
+            });
+            benchmarks.put("board.getMoveScore." + phase, () -> {
+                long sum = 0;
+                for (int i = 0; i < candidateCount; i++) {
+                    sum += board.getMoveScore(candidates[i]);
+                }
+                sink += sum;
+                return candidateCount;
+            });
+            benchmarks.put("board.isUseless." + phase, () -> {
+                long sum = 0;
+                for (int i = 0; i < candidateCount; i++) {
+                    sum += board.isUseless(candidates[i]) ? 1 : 0;
+                }
+                sink += sum;
+                return candidateCount;
+            });
+            benchmarks.put("board.score." + phase, () -> {
+                sink += board.getScoreO() - board.getScoreX() + board.getPatternScoreO() - board.getPatternScoreX();
+                return 1;
+            });
+            benchmarks.put("board.getDeepCopy." + phase, () -> {
+                sink += board.getDeepCopy().getZobristKey();
+                return 1;
+            });
+            for (int threads : threadCounts) {
+                benchmarks.put(searchName(phase, threads), () -> {
+                    useThreads(threads);
+                    AlphaBetaAdvanced.clearTranspositionTable();
+                    int[] result = AlphaBetaAdvanced.analyse(board, SEARCH_PLY);
+                    sink += result[0];
+                    searchNodes += result[2];
+                    return 1;
+                });
+            }
+            benchmarks.put("mcts.playouts" + MCTS_PLAYOUTS + "." + phase, () -> {
+                MonteCarlo.clearTree();
+                SearchStats stats = MonteCarlo.analyse(board, MCTS_PLAYOUTS, null);
+                sink += stats.move;
+                searchNodes += stats.evaluations;
+                return 1;
+            });
+        }
+        return benchmarks;
+    }
+
+    /**
+     * Time one benchmark.
+     * @param operation the work to time
+     * @return          the median ns per operation, bytes per operation and nodes per second
+     */
+    private static double[] measure (Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation);
+        }
+
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        double bytes = 0;
+        double nodesPerSecond = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            double[] result = iteration(operation);
+            nanosPerOp[i] = result[0];
+            bytes += result[1] / MEASURED_ITERATIONS;
+            nodesPerSecond += result[2] / MEASURED_ITERATIONS;
+        }
+        Arrays.sort(nanosPerOp);
+        return new double[] {nanosPerOp[MEASURED_ITERATIONS / 2], bytes, nodesPerSecond};
+    }
+
+    /**
+     * Run the work over and over for about ITERATION_NANOS.
+     * @param operation the work to time
+     * @return          ns per operation, bytes per operation and nodes per second
+     */
+    private static double[] iteration (Operation operation) {
+        long bytesBefore = allocatedBytes();
+        searchNodes = 0;
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            operations += operation.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+
+        long bytes = allocatedBytes() - bytesBefore;
+        return new double[] {(double) elapsed / operations, (double) bytes / operations, searchNodes * 1e9 / elapsed};
+    }
+
+    /**
+     * Get the bytes allocated so far by this thread, if the JVM can tell.
+     * @return          the allocated bytes, or 0
+     */
+    private static long allocatedBytes () {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Read the ns per operation of a saved run.
+     * @param file          the file written with --save
+     * @return              the ns per operation of each benchmark
+     * @throws IOException  if the file cannot be read
+     */
+    private static Map<String, Double> readBaseline (Path file) throws IOException {
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (fields.length >= 2 && !fields[0].equals("benchmark")) {
+                baseline.put(fields[0], Double.parseDouble(fields[1]));
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Print how the searches scale with the number of threads: the speedup of
+     * the time to reach SEARCH_PLY over one thread, and the nodes per second.
+     * @param results       the ns per operation, bytes per operation and nodes per second of each benchmark
+     * @param threadCounts  the numbers of threads the searches ran on
+     */
+    private static void printScaling (Map<String, double[]> results, int[] threadCounts) {
+        System.out.printf("%nLazy SMP at ply %d on %d processors%n", SEARCH_PLY, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %8s %14s %10s %14s %16s%n", "phase", "threads", "ms to depth", "speedup", "nodes/s", "nodes/s/thread");
+        for (String phase : PHASES) {
+            double[] single = results.get(searchName(phase, 1));
+            for (int threads : threadCounts) {
+                double[] result = results.get(searchName(phase, threads));
+                if (result == null) continue;
+
+                String speedup = (single != null) ? String.format("%.2fx", single[0] / result[0]) : "";
+                System.out.printf("%-8s %8d %14.1f %10s %14.0f %16.0f%n", phase, threads, result[0] / 1e6, speedup,
+                        result[2], result[2] / threads);
+            }
+        }
+    }
+
+    /**
+     * Run the benchmarks.
+     * @param args          the options, see the class comment
+     * @throws IOException  if a file cannot be read or written
+     */
+    public static void main (String[] args) throws IOException {
+        Path save = null;
+        Path baselineFile = null;
+        double tolerance = 15;
+        String filter = "";
+        int[] threadCounts = {1};
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--save":      save = Paths.get(args[i + 1]); break;
+                case "--baseline":  baselineFile = Paths.get(args[i + 1]); break;
+                case "--tolerance": tolerance = Double.parseDouble(args[i + 1]); break;
+                case "--filter":    filter = args[i + 1]; break;
+                case "--threads":   threadCounts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+
+        MonteCarlo.setThreadCount(1);
+        Map<String, Double> baseline = (baselineFile != null) ? readBaseline(baselineFile) : new LinkedHashMap<>();
+        List<String> lines = new ArrayList<>();
+        lines.add("benchmark,ns/op,bytes/op,nodes/s");
+        List<String> regressions = new ArrayList<>();
+
+        Map<String, double[]> results = new LinkedHashMap<>();
+
+        System.out.printf("%-32s %14s %12s %14s %10s%n", "benchmark", "ns/op", "bytes/op", "nodes/s", "change");
+        for (Map.Entry<String, Operation> benchmark : benchmarks(threadCounts).entrySet()) {
+            String name = benchmark.getKey();
+            if (!name.contains(filter)) continue;
+
+            double[] result = measure(benchmark.getValue());
+            results.put(name, result);
+            String change = "";
+            Double before = baseline.get(name);
+            if (before != null) {
+                double percent = 100 * (result[0] - before) / before;
+                change = String.format("%+.1f%%", percent);
+                if (percent > tolerance) {
+                    regressions.add(name + " " + change);
+                }
+            }
+
+            System.out.printf("%-32s %14.1f %12.1f %14.0f %10s%n", name, result[0], result[1], result[2], change);
+            lines.add(String.format("%s,%.1f,%.1f,%.0f", name, result[0], result[1], result[2]));
+        }
+
+        if (threadCounts.length > 1 || threadCounts[0] != 1) {
+            printScaling(results, threadCounts);
+        }
+        if (save != null) {
+            Files.write(save, lines, StandardCharsets.UTF_8);
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println("Slower than the baseline by more than " + tolerance + "%: " + regressions);
+            System.exit(1);
+        }
+    }
+
+}
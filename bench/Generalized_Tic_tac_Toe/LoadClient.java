@@ -0,0 +1,323 @@
+package Generalized_Tic_tac_Toe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Puts a GameServer under load: opens many games at once and plays random
+ * moves in all of them until the time is up, then reports the requests per
+ * second, the engine moves per second and percentiles of the latency of each
+ * kind of request.
+ *
+ * Each client thread drives its share of the games in turn, without waiting
+ * for any one of them: it plays a move in a game whose turn it is, polls a game
+ * whose engine is thinking, and starts a new game when one is over. The engine
+ * reply time is measured from the move of the client to the poll that first
+ * sees the answer, so it includes up to one round over the thread's games.
+ *
+ * Usage: LoadClient host port sessions threads seconds width m engine budgetMillis
+ */
+public class LoadClient {
+
+    /**
+     * Latencies of one kind of request, in nanoseconds.
+     */
+    private static final class Latencies {
+
+        private long[] nanos = new long[1024];
+        private int count;
+
+        /**
+         * Add a latency.
+         * @param latency   the latency in nanoseconds
+         */
+        void add (long latency) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, 2 * count);
+            }
+            nanos[count++] = latency;
+        }
+
+        /**
+         * Add the latencies of another thread.
+         * @param other     the latencies
+         */
+        void addAll (Latencies other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.nanos[i]);
+            }
+        }
+
+        /**
+         * Describe the distribution.
+         * @return          the count and the p50, p90, p99 and max in milliseconds
+         */
+        String summary () {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return String.format("%8d %9.2f %9.2f %9.2f %9.2f", count,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100));
+        }
+
+        /**
+         * Get a percentile of sorted latencies.
+         * @param sorted        the latencies, sorted
+         * @param percentile    the percentile, between 0 and 100
+         * @return              the latency in milliseconds
+         */
+        private static double percentile (long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1] / 1e6;
+        }
+
+    }
+
+    /**
+     * One client thread and the games it drives.
+     */
+    private static final class Driver implements Runnable {
+
+        final Latencies create = new Latencies();
+        final Latencies poll = new Latencies();
+        final Latencies move = new Latencies();
+        final Latencies reply = new Latencies();
+        int busy;
+        int errors;
+
+        private final int sessions;
+        private final long deadline;
+        private final String games;
+        private final String newGame;
+
+        /**
+         * Construct Driver.
+         * @param sessions  the number of games to keep open
+         * @param deadline  the System.nanoTime value at which to stop
+         * @param games     the URL of the games
+         * @param newGame   the URL that starts a game, with its parameters
+         */
+        Driver (int sessions, long deadline, String games, String newGame) {
+            this.sessions = sessions;
+            this.deadline = deadline;
+            this.games = games;
+            this.newGame = newGame;
+        }
+
+        @Override
+        public void run () {
+            String[] state = new String[sessions];
+            long[] waitingSince = new long[sessions];
+
+            while (System.nanoTime() < deadline) {
+                boolean played = false;
+                for (int i = 0; i < sessions && System.nanoTime() < deadline; i++) {
+                    try {
+                        if (state[i] == null) {
+                            state[i] = timed(create, "POST", newGame);
+                            waitingSince[i] = field(state[i], "thinking").equals("true") ? System.nanoTime() : 0;
+                            played = true;
+                        } else if (waitingSince[i] != 0) {
+                            String polled = timed(poll, "GET", games + "/" + field(state[i], "id"));
+                            if (polled.startsWith("{\"id\"") && field(polled, "thinking").equals("false")) {
+                                reply.add(System.nanoTime() - waitingSince[i]);
+                                waitingSince[i] = 0;
+                                state[i] = polled;
+                            }
+                        } else if (!field(state[i], "status").equals("playing")) {
+                            request("DELETE", games + "/" + field(state[i], "id"));
+                            state[i] = null;
+                        } else {
+                            String cells = field(state[i], "cells");
+                            int cell = randomEmptyCell(cells);
+                            String answer = timed(move, "POST", games + "/" + field(state[i], "id") + "/moves?cell=" + cell);
+                            if (answer.startsWith("{\"id\"")) {
+                                state[i] = answer;
+                                waitingSince[i] = field(answer, "thinking").equals("true") ? System.nanoTime() : 0;
+                                played = true;
+                            } else if (answer.contains("busy")) {
+                                busy++;
+                            } else {
+                                errors++;
+                                state[i] = null;
+                            }
+                        }
+                    } catch (IOException e) {
+                        errors++;
+                        state[i] = null;
+                        waitingSince[i] = 0;
+                    }
+                }
+                if (!played) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Send a request and time it.
+         * @param latencies     where to add the time
+         * @param method        the HTTP method
+         * @param url           the URL
+         * @return              the body of the answer
+         * @throws IOException  if the server cannot be reached
+         */
+        private static String timed (Latencies latencies, String method, String url) throws IOException {
+            long start = System.nanoTime();
+            String answer = request(method, url);
+            latencies.add(System.nanoTime() - start);
+            return answer;
+        }
+
+        /**
+         * Pick an empty cell at random.
+         * @param cells         the board, one character per cell, '-' for empty
+         * @return              the index of the cell
+         */
+        private static int randomEmptyCell (String cells) {
+            int empty = 0;
+            for (int i = 0; i < cells.length(); i++) {
+                if (cells.charAt(i) == '-') empty++;
+            }
+            int pick = ThreadLocalRandom.current().nextInt(empty);
+            for (int i = 0; ; i++) {
+                if (cells.charAt(i) == '-' && pick-- == 0) {
+                    return i;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * LoadClient cannot be instantiated.
+     */
+    private LoadClient () {}
+
+    /**
+     * Send a request and read the whole answer, so that the connection can be
+     * reused.
+     * @param method        the HTTP method
+     * @param url           the URL
+     * @return              the body of the answer, error or not
+     * @throws IOException  if the server cannot be reached
+     */
+    private static String request (String method, String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in == null) {
+            return "";
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try {
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                body.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a field of a flat JSON object written by GameServer.
+     * @param json          the object
+     * @param name          the name of the field
+     * @return              the value, without quotes, or "" if there is no such field
+     */
+    private static String field (String json, String name) {
+        int start = json.indexOf("\"" + name + "\":");
+        if (start == -1) {
+            return "";
+        }
+        start += name.length() + 3;
+        if (json.charAt(start) == '"') {
+            return json.substring(start + 1, json.indexOf('"', start + 1));
+        }
+        int end = start;
+        while (end < json.length() && json.charAt(end) != ',' && json.charAt(end) != '}') end++;
+        return json.substring(start, end);
+    }
+
+    /**
+     * Run the load from the command line, for example
+     * "localhost 8080 2000 8 30 15 5 advanced 50".
+     * @param args          host, port, games, threads, seconds, width, M, engine and ms per engine move
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main (String[] args) throws InterruptedException {
+        if (args.length != 9) {
+            System.out.println("Usage: LoadClient host port sessions threads seconds width m engine budgetMillis");
+            return;
+        }
+
+        String base = "http://" + args[0] + ":" + args[1];
+        int sessions = Integer.parseInt(args[2]);
+        int threads = Integer.parseInt(args[3]);
+        long seconds = Long.parseLong(args[4]);
+        String games = base + "/games";
+        String create = games + "?width=" + args[5] + "&m=" + args[6] + "&engine=" + args[7] + "&budget=" + args[8];
+
+        System.setProperty("http.maxConnections", String.valueOf(threads));
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1000000000L;
+
+        List<Driver> drivers = new ArrayList<>();
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int share = sessions / threads + (t < sessions % threads ? 1 : 0);
+            Driver driver = new Driver(share, deadline, games, create);
+            drivers.add(driver);
+            Thread thread = new Thread(driver, "LoadClient " + t);
+            thread.start();
+            running.add(thread);
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        Latencies creates = new Latencies();
+        Latencies polls = new Latencies();
+        Latencies moves = new Latencies();
+        Latencies replies = new Latencies();
+        int busy = 0;
+        int errors = 0;
+        for (Driver driver : drivers) {
+            creates.addAll(driver.create);
+            polls.addAll(driver.poll);
+            moves.addAll(driver.move);
+            replies.addAll(driver.reply);
+            busy += driver.busy;
+            errors += driver.errors;
+        }
+
+        long requests = (long) creates.count + polls.count + moves.count;
+        System.out.printf("%d games on %d threads for %.1f s: %.0f requests/s, %.0f engine moves/s, %d busy, %d errors.%n%n",
+                sessions, threads, elapsed, requests / elapsed, replies.count / elapsed, busy, errors);
+        System.out.printf("%-14s %8s %9s %9s %9s %9s%n", "request", "count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        System.out.printf("%-14s %s%n", "create", creates.summary());
+        System.out.printf("%-14s %s%n", "move", moves.summary());
+        System.out.printf("%-14s %s%n", "poll", polls.summary());
+        System.out.printf("%-14s %s%n", "engine reply", replies.summary());
+    }
+
+}
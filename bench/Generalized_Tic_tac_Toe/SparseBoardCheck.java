@@ -0,0 +1,78 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+/**
+ * Checks that SparseBoard follows the same rules and keeps the same winning
+ * window scores as Board.
+ *
+ * Random games are played on both boards at once, on shapes from 3x3 up to
+ * 19x19 with M from 3 to 6, and some moves are taken back again. After every
+ * move and every take-back, the turn, the winner, the end of the game and both
+ * scores must agree; a game taken all the way back must be empty again.
+ *
+ * Usage: SparseBoardCheck [games [seed]]
+ */
+public class SparseBoardCheck {
+
+    /**
+     * Count the differences between the two boards.
+     * @param board     the dense board
+     * @param sparse    the sparse board of the same shape and moves
+     * @return          the number of things that differ
+     */
+    private static int compare (Board board, SparseBoard sparse) {
+        int differences = 0;
+        if (board.getTurn() != sparse.getTurn()) differences++;
+        if (board.isGameOver() != sparse.isGameOver()) differences++;
+        if (board.isGameOver() && sparse.isGameOver() && board.getWinner() != sparse.getWinner()) differences++;
+        if (board.getScoreX() != sparse.getScoreX()) differences++;
+        if (board.getScoreO() != sparse.getScoreO()) differences++;
+        return differences;
+    }
+
+    public static void main (String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        java.util.Random random = new java.util.Random(args.length > 1 ? Long.parseLong(args[1]) : 1);
+        long checks = 0;
+        long differences = 0;
+
+        for (int game = 0; game < games; game++) {
+            int width = 3 + random.nextInt(17);
+            int m = 3 + random.nextInt(Math.min(4, width - 2));
+            Board board = new Board(width, m);
+            SparseBoard sparse = new SparseBoard(width, m);
+            int played = 0;
+
+            while (!board.isGameOver() && board.getAvailableMoves().size() > 0) {
+                int move = board.getAvailableMoves().get(random.nextInt(board.getAvailableMoves().size()));
+                board.makeMove(move);
+                sparse.move(move % width, move / width);
+                played++;
+                if (played > 1 && random.nextInt(4) == 0) {
+                    board.unmakeMove();
+                    sparse.unmakeMove();
+                    played--;
+                }
+                checks++;
+                differences += compare(board, sparse);
+            }
+
+            for (; played > 0; played--) {
+                board.unmakeMove();
+                sparse.unmakeMove();
+                checks++;
+                differences += compare(board, sparse);
+            }
+            if (sparse.getMoveCount() != 0 || sparse.getScoreX() != 0 || sparse.getScoreO() != 0) {
+                differences++;
+            }
+        }
+
+        System.out.printf("%d games, %d positions compared, %d differences.%n", games, checks, differences);
+        if (differences > 0) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the hot paths of Board on the early, middle and late
+ * positions of the Benchmark corpus. Each call works on the next candidate
+ * move of the position, so the time is per move and averages over the cells
+ * the search would look at.
+ *
+ * makeUnmake plays a stone and takes it back: the bitsets, the win check and
+ * the window counts and scores (shiftScoreWindow), both ways. The pattern
+ * keys are not written until a shape is asked for, so getMoveScore pays for
+ * them. isWinningMove is the win check alone. Run with "-prof gc" for the
+ * allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({"early", "mid", "late"})
+    String phase;
+
+    private Board board;
+    private int[] candidates;
+    private int candidateCount;
+    private int next;
+
+    @Setup
+    public void setUp () {
+        board = Generalized_Tic_tac_Toe.Benchmark.position(phase);
+        candidates = new int[board.getBoardWidth() * board.getBoardWidth()];
+        candidateCount = board.copyCandidateMoves(candidates);
+    }
+
+    /**
+     * Get the next candidate move, going round all of them.
+     * @return          the move
+     */
+    private int nextMove () {
+        if (++next == candidateCount) {
+            next = 0;
+        }
+        return candidates[next];
+    }
+
+    @Benchmark
+    public int makeUnmake () {
+        board.makeMove(nextMove());
+        int score = board.getScoreO();
+        board.unmakeMove();
+        return score;
+    }
+
+    @Benchmark
+    public boolean isWinningMove () {
+        return board.isWinningMove(nextMove(), Board.State.X);
+    }
+
+    @Benchmark
+    public int getMoveScore () {
+        return board.getMoveScore(nextMove());
+    }
+
+    @Benchmark
+    public boolean isUseless () {
+        return board.isUseless(nextMove());
+    }
+
+    @Benchmark
+    public Board getDeepCopy () {
+        return board.getDeepCopy();
+    }
+
+}
@@ -0,0 +1,89 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of fixed-depth AlphaBetaAdvanced searches on the early,
+ * middle and late positions of the Benchmark corpus. Every search starts from
+ * an empty transposition table. Besides searches per second, the nodes
+ * counter reports the full width nodes searched per second; the threat search
+ * runs first and its nodes are not counted.
+ *
+ * The threads parameter is the number of Lazy SMP threads of each search, so
+ * searches per second over the result for one thread is the speedup of the
+ * time to reach the depth, and the nodes counter the nodes per second of all
+ * the threads together.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    /**
+     * The nodes searched, reported by JMH as a rate next to the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void clear () {
+            nodes = 0;
+        }
+
+    }
+
+    @Param({"early", "mid", "late"})
+    String phase;
+
+    @Param({"4"})
+    int ply;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    private Board board;
+
+    @Setup
+    public void setUp () {
+        AlphaBetaAdvanced.setVerbose(false);
+        AlphaBetaAdvanced.setThreadCount(threads);
+        board = Generalized_Tic_tac_Toe.Benchmark.position(phase);
+    }
+
+    @TearDown
+    public void tearDown () {
+        AlphaBetaAdvanced.setThreadCount(1);
+    }
+
+    @Benchmark
+    public int search (Nodes counter) {
+        AlphaBetaAdvanced.clearTranspositionTable();
+        int[] result = AlphaBetaAdvanced.analyse(board, ply);
+        counter.nodes += result[2];
+        return result[0];
+    }
+
+}
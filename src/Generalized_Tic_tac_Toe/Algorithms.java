@@ -2,6 +2,8 @@ package Generalized_Tic_tac_Toe;
 
 import Generalized_Tic_tac_Toe.Board;
 
+import java.time.Duration;
+
 /**
  * Uses various algorithms to play Tic Tac Toe.
  */
@@ -58,9 +60,10 @@ public class Algorithms {
      * Play using the Alpha-Beta Pruning algorithm. Include depth in the
      * evaluation function.
      * @param board     the Tic Tac Toe board to play on
+     * @return          the statistics of the search
      */
-    public static void alphaBetaAdvanced (Board board) {
-        AlphaBetaAdvanced.run(board.getTurn(), board);
+    public static SearchStats alphaBetaAdvanced (Board board) {
+        return AlphaBetaAdvanced.run(board.getTurn(), board);
     }
 
     /**
@@ -68,9 +71,110 @@ public class Algorithms {
      * evaluation function and a depth limit.
      * @param board     the Tic Tac Toe board to play on
      * @param ply       the maximum depth
+     * @return          the statistics of the search
+     */
+    public static SearchStats alphaBetaAdvanced (Board.State player, Board board) {
+        return AlphaBetaAdvanced.run(player, board);
+    }
+
+    /**
+     * Play using the Alpha-Beta Pruning algorithm. Include depth in the
+     * evaluation function and a depth limit.
+     * @param board     the Tic Tac Toe board to play on
+     * @param ply       the maximum depth
+     * @return          the statistics of the search
+     */
+    public static SearchStats alphaBetaAdvanced (Board board, int ply) {
+        return AlphaBetaAdvanced.run(board.getTurn(), board, ply);
+    }
+
+    /**
+     * Play using the Alpha-Beta Pruning algorithm with iterative deepening.
+     * Searches deeper and deeper until the time budget is spent.
+     * @param board     the Tic Tac Toe board to play on
+     * @param budget    the time to spend on the move
+     * @return          the statistics of the search
+     */
+    public static SearchStats alphaBetaAdvanced (Board board, Duration budget) {
+        return AlphaBetaAdvanced.run(board.getTurn(), board, budget);
+    }
+
+    /**
+     * Play using the Alpha-Beta Pruning algorithm with a depth limit and its
+     * own selective search switches and transposition table.
+     * @param board     the Tic Tac Toe board to play on
+     * @param ply       the maximum depth
+     * @param options   the selective search switches
+     * @param table     the transposition table
+     * @return          the statistics of the search
+     */
+    static SearchStats alphaBetaAdvanced (Board board, int ply, SearchOptions options, TranspositionTable table) {
+        return AlphaBetaAdvanced.run(board.getTurn(), board, ply, options, table);
+    }
+
+    /**
+     * Play using the Alpha-Beta Pruning algorithm with iterative deepening
+     * and its own selective search switches and transposition table.
+     * @param board     the Tic Tac Toe board to play on
+     * @param budget    the time to spend on the move
+     * @param options   the selective search switches
+     * @param table     the transposition table
+     * @return          the statistics of the search
+     */
+    static SearchStats alphaBetaAdvanced (Board board, Duration budget, SearchOptions options, TranspositionTable table) {
+        return AlphaBetaAdvanced.run(board.getTurn(), board, budget, options, table);
+    }
+
+    /**
+     * Play using Monte Carlo Tree Search with the default number of playouts.
+     * @param board     the Tic Tac Toe board to play on
+     * @return          the statistics of the search
+     */
+    public static SearchStats monteCarlo (Board board) {
+        return MonteCarlo.run(board, MonteCarlo.DEFAULT_PLAYOUTS);
+    }
+
+    /**
+     * Play using Monte Carlo Tree Search with a number of playouts.
+     * @param board     the Tic Tac Toe board to play on
+     * @param playouts  the number of playouts
+     * @return          the statistics of the search
+     */
+    public static SearchStats monteCarlo (Board board, int playouts) {
+        return MonteCarlo.run(board, playouts);
+    }
+
+    /**
+     * Play using Monte Carlo Tree Search until the time budget is spent.
+     * @param board     the Tic Tac Toe board to play on
+     * @param budget    the time to spend on the move
+     * @return          the statistics of the search
+     */
+    public static SearchStats monteCarlo (Board board, Duration budget) {
+        return MonteCarlo.run(board, budget);
+    }
+
+    /**
+     * Play a perfect move on a board of at most 16 cells, looked up in the
+     * solved database of its shape. The board is solved the first time a
+     * shape is played, unless a database was registered for it.
+     * @param board     the Tic Tac Toe board to play on
+     */
+    public static void solved (Board board) {
+        int move = PositionDatabase.of(board.getBoardWidth(), board.getWinLength()).bestMove(board);
+        if (move != -1) {
+            board.move(move);
+        }
+    }
+
+    /**
+     * Play on a sparse board using the Alpha-Beta Pruning algorithm with a
+     * depth limit. Only cells near the stones are searched.
+     * @param board     the sparse Tic Tac Toe board to play on
+     * @param ply       the maximum depth
      */
-    public static void alphaBetaAdvanced (Board.State player, Board board) {
-        AlphaBetaAdvanced.run(player, board);
+    public static void alphaBetaSparse (SparseBoard board, int ply) {
+        SparseAlphaBeta.run(board, ply);
     }
 
 }
@@ -2,6 +2,15 @@ package Generalized_Tic_tac_Toe;
 
 import Generalized_Tic_tac_Toe.Board;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Uses the Alpha-Beta Pruning algorithm to play a move in a game of Tic Tac Toe
  * but includes depth in the evaluation function.
@@ -14,61 +23,660 @@ import Generalized_Tic_tac_Toe.Board;
  * still wins inevitably, but it chooses a longer route. By adding the depth
  * into the evaluation function, it allows the AI to pick the move that would
  * make it win as soon as possible.
+ *
+ * The search can run on several threads at once (Lazy SMP). Every thread runs
+ * the same iterative deepening search on its own copy of the board and they
+ * share the transposition table, so the threads mostly help each other by
+ * filling the table. Helper threads start at alternating depths and search the
+ * root moves in a different order, which keeps them from all doing the same
+ * work. The deepest iteration any thread completes decides the move.
+ *
+ * Only the first move of a node is searched with the full window. The others
+ * are searched with a null window, which only shows whether they beat the
+ * first, and searched again in full when they do (principal variation
+ * search). Each iteration starts the root with a window around the score the
+ * iteration two plies shallower found, and widens it when the score falls
+ * outside.
+ *
+ * With some 200 candidate moves per node on a large board, most of the tree
+ * is quiet moves that neither make nor block a threat. After the first few
+ * moves of a node, those are searched a ply or two shallower and searched
+ * again at full depth only if they beat the best move so far (late move
+ * reductions). One or two plies from the leaves they are skipped when the
+ * score is so far from the window that no quiet move could reach it
+ * (futility pruning). SearchOptions switches each technique.
+ *
+ * A position is not scored while a four stands on it. Past the depth, a
+ * player that can complete a window wins, one facing two fours loses, and one
+ * facing a single four blocks it, for a few plies, until no four is left
+ * (quiescence search). This catches the four left on the board at the
+ * horizon, which an odd depth would otherwise miss.
  */
 class AlphaBetaAdvanced {
 
-    private static int maxPly = 4;
-    private static int deepening = 0;
+    private static int defaultPly = 4;
+    private static TranspositionTable sharedTable = new TranspositionTable(1 << 20);
+    private static int threadCount = 1;
+    private static ExecutorService helpers;
+    private static int threatDepth = 8;
+    private static OpeningBook book;
+    private static volatile boolean verbose = true;
+    private static SearchOptions defaultOptions = SearchOptions.DEFAULT;
+
+    // The number of positions the threat search may look at before the
+    // full width search takes over.
+    private static final int THREAT_NODES = 20000;
+
+    // Passed by the searches nobody cancels.
+    private static final AtomicBoolean NOT_CANCELLED = new AtomicBoolean();
+
+    // Scores beyond this are wins, counted from the root so they need adjusting
+    // when they are stored in or read from the transposition table.
+    private static final int WIN_THRESHOLD = Integer.MAX_VALUE - 1000;
+
+    // Bounds beyond every score, wins and losses included. Scores are ints,
+    // so a null window around alpha is (alpha, alpha + 1).
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    // The score of an iteration that did not run.
+    private static final int NO_SCORE = Integer.MIN_VALUE;
+
+    // Moves whose ordering score reaches an open three, made or blocked, are
+    // never reduced or pruned. Quiet moves are searched shallower after the
+    // first LATE_MOVES moves, and skipped within FUTILITY_MARGINS[depth] of
+    // the window: a quiet move changes the score by under 10000.
+    private static final int TACTICAL_MOVE = Patterns.SHAPE_VALUES[Patterns.OPEN_THREE];
+    private static final int LATE_MOVES = 3;
+    private static final int[] FUTILITY_MARGINS = {0, 10000, 20000};
+
+    // State of one search thread. The root records its best move instead of
+    // playing it, and a search past its deadline unwinds with aborted set.
+    private final int id;
+    private final AtomicBoolean stopped;
+    private final AtomicBoolean cancelled;
+    private final SearchOptions options;
+    private final TranspositionTable table;
+    private final Result result;
+    private int maxPly;
+    private int rootBestMove;
+    private int previousBestMove;
+    private long deadline;
+    private boolean aborted;
+    private final SearchStats stats = new SearchStats();
+
+    // Move ordering: two killer moves per ply, a history score per cell, and
+    // per-ply buffers for the candidate moves and their ordering scores.
+    private int[][] killers;
+    private int[] history;
+    private int[][] moveBuffers;
+    private int[][] orderBuffers;
+
+    /**
+     * AlphaBetaAdvanced can only be instantiated by its own search threads.
+     * @param id            the number of the thread, 0 for the calling thread
+     * @param stopped       set when the helper threads should give up
+     * @param cancelled     set when every thread should give up
+     * @param options       the selective search switches
+     * @param table         the transposition table the threads share
+     * @param result        the deepest completed iteration of all the threads
+     */
+    private AlphaBetaAdvanced (int id, AtomicBoolean stopped, AtomicBoolean cancelled, SearchOptions options,
+            TranspositionTable table, Result result) {
+        this.id = id;
+        this.stopped = stopped;
+        this.cancelled = cancelled;
+        this.options = options;
+        this.table = table;
+        this.result = result;
+    }
 
     /**
-     * AlphaBetaAdvanced cannot be instantiated.
+     * Replace the transposition table with an empty one of a different size.
+     * @param size          the number of entries, rounded down to a power of two
      */
-    private AlphaBetaAdvanced() {}
+    static void setTranspositionTableSize (int size) {
+        sharedTable = new TranspositionTable(size);
+    }
+
+    /**
+     * Remove every entry from the transposition table, so that the next search
+     * starts from nothing.
+     */
+    static void clearTranspositionTable () {
+        sharedTable.clear();
+    }
+
+    /**
+     * Get the move the transposition table holds as best for a position,
+     * which after a search is the reply the engine expects to its own move.
+     * @param board         the Tic Tac Toe board
+     * @return              the move, or -1 if the position is not in the table
+     */
+    static int expectedMove (Board board) {
+        long entry = sharedTable.probe(board.getZobristKey());
+        return (entry == TranspositionTable.MISS) ? -1 : TranspositionTable.move(entry);
+    }
+
+    /**
+     * Set the number of threads that search each move.
+     * @param threads       the number of threads, including the calling thread
+     */
+    static synchronized void setThreadCount (int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be greater than 0.");
+        }
+
+        if (helpers != null) {
+            helpers.shutdown();
+            helpers = null;
+        }
+        if (threads > 1) {
+            helpers = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "AlphaBetaAdvanced helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        threadCount = threads;
+    }
+
+    /**
+     * Set how many attacking moves the threat search looks ahead before the
+     * full width search starts. 0 turns the threat search off.
+     * @param depth         the maximum number of attacking moves
+     */
+    static void setThreatSearchDepth (int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Threat search depth must not be negative.");
+        }
+        threatDepth = depth;
+    }
+
+    /**
+     * Set the selective search switches of the searches that are not given
+     * their own.
+     * @param options       the switches
+     */
+    static void setOptions (SearchOptions options) {
+        defaultOptions = options;
+    }
+
+    /**
+     * Get the depth run searches to when no depth is given.
+     * @return              the depth
+     */
+    static int getDefaultPly () {
+        return defaultPly;
+    }
+
+    /**
+     * Set the opening book to play from before searching.
+     * @param openingBook   the book, or null to always search
+     */
+    static void setOpeningBook (OpeningBook openingBook) {
+        book = openingBook;
+    }
+
+    /**
+     * Set whether each move is printed with the statistics of its search.
+     * @param print         false to play silently, as the tournament runner does
+     */
+    static void setVerbose (boolean print) {
+        verbose = print;
+    }
 
     /**
      * Execute the algorithm.
      * @param player        the player that the AI will identify as
      * @param board         the Tic Tac Toe board to play on
-     * @param maxPly        the maximum depth
+     * @return              the statistics of the search, all zero if the move was not searched
+     */
+    static SearchStats run (Board.State player, Board board) {
+        return run(player, board, defaultPly);
+    }
+
+    /**
+     * Execute the algorithm with a depth limit.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param ply           the maximum depth
+     * @return              the statistics of the search, all zero if the move was not searched
+     */
+    static SearchStats run (Board.State player, Board board, int ply) {
+        return run(player, board, ply, defaultOptions);
+    }
+
+    /**
+     * Execute the algorithm with a depth limit and switches of its own.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param ply           the maximum depth
+     * @param options       the selective search switches
+     * @return              the statistics of the search, all zero if the move was not searched
      */
-    static void run (Board.State player, Board board) {
+    static SearchStats run (Board.State player, Board board, int ply, SearchOptions options) {
+        return run(player, board, ply, options, sharedTable);
+    }
+
+    /**
+     * Execute the algorithm with a depth limit, switches and a transposition
+     * table of its own, so that it learns nothing from other engines.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param ply           the maximum depth
+     * @param options       the selective search switches
+     * @param table         the transposition table
+     * @return              the statistics of the search, all zero if the move was not searched
+     */
+    static SearchStats run (Board.State player, Board board, int ply, SearchOptions options, TranspositionTable table) {
 
-        if (maxPly < 1) {
+        if (ply < 1) {
             throw new IllegalArgumentException("Maximum depth must be greater than 0.");
         }
 
-        //deepening++;
-        /*
-        
-        if(maxPly < 4) {
-        	if(deepening == 6) {
-        		maxPly++;
-        		System.out.println("Depth changes to " + maxPly);
-        	}
-        	if(deepening == 10) {
-        		maxPly++;
-        		System.out.println("Depth changes to " + maxPly);
-        	}
+        if (playOpening(board) || playBookMove(board)) {
+            return new SearchStats();
+        }
+
+        return playBestMove(board, search(player, board, ply, Long.MAX_VALUE, NOT_CANCELLED, options, table));
+    }
+
+    /**
+     * Execute the algorithm with iterative deepening. Searches to depth 1, 2, 3...
+     * until the time budget runs out, then plays the best move of the deepest
+     * search that completed. Depth 1 always completes so there is always a move.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param budget        the time to spend on the move
+     * @return              the statistics of the search, all zero if the move was not searched
+     */
+    static SearchStats run (Board.State player, Board board, Duration budget) {
+        return run(player, board, budget, defaultOptions);
+    }
+
+    /**
+     * Execute the algorithm with iterative deepening and switches of its own.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param budget        the time to spend on the move
+     * @param options       the selective search switches
+     * @return              the statistics of the search, all zero if the move was not searched
+     */
+    static SearchStats run (Board.State player, Board board, Duration budget, SearchOptions options) {
+        return run(player, board, budget, options, sharedTable);
+    }
+
+    /**
+     * Execute the algorithm with iterative deepening, switches and a
+     * transposition table of its own, so that it learns nothing from other
+     * engines.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param budget        the time to spend on the move
+     * @param options       the selective search switches
+     * @param table         the transposition table
+     * @return              the statistics of the search, all zero if the move was not searched
+     */
+    static SearchStats run (Board.State player, Board board, Duration budget, SearchOptions options,
+            TranspositionTable table) {
+
+        if (budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("Time budget must be greater than 0.");
+        }
+
+        if (playOpening(board) || playBookMove(board)) {
+            return new SearchStats();
+        }
+
+        return playBestMove(board, search(player, board, Integer.MAX_VALUE, System.nanoTime() + budget.toNanos(),
+                NOT_CANCELLED, options, table));
+    }
+
+    /**
+     * Search a position without playing the move, as the opening book
+     * builder needs.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param budget        the time to spend on the position
+     * @return              the best move, its score and the number of nodes searched
+     */
+    static int[] analyse (Board board, Duration budget) {
+        return analysis(board, search(board.getTurn(), board, Integer.MAX_VALUE, System.nanoTime() + budget.toNanos()));
+    }
+
+    /**
+     * Choose the move run would play, without playing it: the centre cell on
+     * an empty board, else the opening book move, else the best move found
+     * within the budget. The game server uses this to search on a copy of a
+     * board that its clients keep reading.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param budget        the time to spend on the move
+     * @return              the move
+     */
+    static int chooseMove (Board board, Duration budget) {
+        int move = openingMove(board);
+        if (move == -1) {
+            move = bookMove(board);
+        }
+        return move != -1 ? move : analyse(board, budget)[0];
+    }
+
+    /**
+     * Get the move of the opening book for a position.
+     * @param board         the Tic Tac Toe board
+     * @return              the move, or -1 if there is no book or the position is not in it
+     */
+    static int bookMove (Board board) {
+        OpeningBook openingBook = book;
+        return (openingBook == null) ? -1 : openingBook.probe(board);
+    }
+
+    /**
+     * Search a position to a fixed depth without playing the move, as the
+     * benchmarks need.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param ply           the depth
+     * @return              the best move, its score and the number of nodes searched
+     */
+    static int[] analyse (Board board, int ply) {
+        return analysis(board, search(board.getTurn(), board, ply, Long.MAX_VALUE));
+    }
+
+    /**
+     * Search a position without playing the move, to a depth or until the
+     * budget is spent, whichever comes first.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param ply           the maximum depth
+     * @param budget        the time to spend on the position
+     * @return              the statistics of the search, with the best move and its score
+     */
+    static SearchStats analyse (Board board, int ply, Duration budget) {
+        return analyse(board, ply, budget, NOT_CANCELLED);
+    }
+
+    /**
+     * Search a position without playing the move, to a depth or until the
+     * budget is spent or the search is cancelled, as pondering needs.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param ply           the maximum depth
+     * @param budget        the time to spend on the position, or null for no limit
+     * @param cancelled     set by another thread to stop the search early
+     * @return              the statistics of the search, with the best move and its score
+     */
+    static SearchStats analyse (Board board, int ply, Duration budget, AtomicBoolean cancelled) {
+        return analyse(board, ply, budget, cancelled, defaultOptions);
+    }
+
+    /**
+     * Search a position without playing the move, with switches of its own.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param ply           the maximum depth
+     * @param budget        the time to spend on the position, or null for no limit
+     * @param options       the selective search switches
+     * @return              the statistics of the search, with the best move and its score
+     */
+    static SearchStats analyse (Board board, int ply, Duration budget, SearchOptions options) {
+        return analyse(board, ply, budget, NOT_CANCELLED, options);
+    }
+
+    /**
+     * Search a position without playing the move.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param ply           the maximum depth
+     * @param budget        the time to spend on the position, or null for no limit
+     * @param cancelled     set by another thread to stop the search early
+     * @param options       the selective search switches
+     * @return              the statistics of the search, with the best move and its score
+     */
+    private static SearchStats analyse (Board board, int ply, Duration budget, AtomicBoolean cancelled, SearchOptions options) {
+        long stopTime = (budget == null) ? Long.MAX_VALUE : System.nanoTime() + budget.toNanos();
+        Result result = search(board.getTurn(), board, ply, stopTime, cancelled, options, sharedTable);
+        result.stats.move = analysis(board, result)[0];
+        result.stats.score = result.score;
+        return result.stats;
+    }
+
+    /**
+     * Pack the outcome of a search for analyse.
+     * @param board         the Tic Tac Toe board that was searched
+     * @param result        the deepest completed iteration
+     * @return              the best move, its score and the number of nodes searched
+     */
+    private static int[] analysis (Board board, Result result) {
+        int move = result.move != -1 ? result.move : board.getAvailableMoves().get(0);
+        return new int[] {move, result.score, (int) Math.min(result.stats.nodes, Integer.MAX_VALUE)};
+    }
+
+    /**
+     * Search the board on all the threads.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param ply           the depth at which the calling thread stops deepening
+     * @param stopTime      the System.nanoTime value at which to give up
+     * @return              the deepest completed iteration of all the threads
+     */
+    private static Result search (Board.State player, Board board, int ply, long stopTime) {
+        return search(player, board, ply, stopTime, NOT_CANCELLED, defaultOptions, sharedTable);
+    }
+
+    /**
+     * Search the board on all the threads until done or cancelled.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param ply           the depth at which the calling thread stops deepening
+     * @param stopTime      the System.nanoTime value at which to give up
+     * @param cancelled     set by another thread to stop the search early
+     * @param options       the selective search switches
+     * @param table         the transposition table
+     * @return              the deepest completed iteration of all the threads
+     */
+    private static Result search (Board.State player, Board board, int ply, long stopTime, AtomicBoolean cancelled,
+            SearchOptions options, TranspositionTable table) {
+        long startTime = System.nanoTime();
+        AtomicBoolean stopped = new AtomicBoolean();
+        Result result = new Result();
+        List<Future<?>> running = new ArrayList<>();
+
+        // A forced win found by the threat search needs no further search. It
+        // may use half of the time, the full width search gets the rest.
+        long threatStopTime = (stopTime == Long.MAX_VALUE) ? Long.MAX_VALUE : startTime + (stopTime - startTime) / 2;
+        int threatMove = ThreatSearch.findWin(board, threatDepth, THREAT_NODES, threatStopTime, cancelled);
+        if (threatMove != -1) {
+            result.offer(1, threatMove, board.getTurn() == Board.State.O ? WIN_THRESHOLD + 1 : -WIN_THRESHOLD - 1);
+            return result.finish(startTime);
+        }
+
+        table.newSearch();
+        synchronized (AlphaBetaAdvanced.class) {
+            for (int id = 1; id < threadCount; id++) {
+                AlphaBetaAdvanced helper = new AlphaBetaAdvanced(id, stopped, cancelled, options, table, result);
+                Board copy = board.getDeepCopy();
+                running.add(helpers.submit(() -> helper.iterate(player, copy, Integer.MAX_VALUE, stopTime)));
+            }
+        }
+
+        new AlphaBetaAdvanced(0, stopped, cancelled, options, table, result).iterate(player, board, ply, stopTime);
+        stopped.set(true);
+
+        for (Future<?> helper : running) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A search thread failed.", e.getCause());
+            }
+        }
+        return result.finish(startTime);
+    }
+
+    /**
+     * Search deeper and deeper until the depth limit, the deadline or, for a
+     * helper thread, the end of the search on the calling thread.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to search, owned by this thread
+     * @param lastPly       the depth of the last iteration
+     * @param stopTime      the System.nanoTime value at which to give up
+     */
+    private void iterate (Board.State player, Board board, int lastPly, long stopTime) {
+        int cells = board.getBoardWidth() * board.getBoardWidth();
+        killers = new int[cells + 2][2];
+        history = new int[cells];
+        moveBuffers = new int[cells + 2][];
+        orderBuffers = new int[cells + 2][];
+        for (int[] killer : killers) {
+            killer[0] = -1;
+            killer[1] = -1;
+        }
+
+        int bestMove = -1;
+        lastPly = Math.min(lastPly, board.getAvailableMoves().size());
+
+        // The score swings between odd and even depths, so each iteration
+        // expects the score of the one two plies shallower.
+        int previousScore = NO_SCORE;
+        int expectedScore = NO_SCORE;
+
+        for (int ply = 1 + id % 2; ply <= lastPly; ply++) {
+            maxPly = ply;
+            previousBestMove = bestMove;
+            rootBestMove = -1;
+            deadline = (id == 0 && ply == 1) ? Long.MAX_VALUE : stopTime;
+            aborted = false;
+
+            int score = searchRoot(player, board, expectedScore);
+
+            if (aborted) {
+                break;
+            }
+            expectedScore = previousScore;
+            previousScore = score;
+
+            bestMove = rootBestMove;
+            result.offer(ply, bestMove, score);
+
+            // A won or lost position will not change with more depth.
+            if (score > WIN_THRESHOLD || score < -WIN_THRESHOLD || System.nanoTime() >= stopTime || stopped.get() || cancelled.get()) {
+                break;
+            }
+        }
+        result.addStats(stats);
+    }
+
+    /**
+     * Search the root with an aspiration window around the expected score.
+     * A score outside the window is a bound on the true score, so the next
+     * window starts at that bound and reaches four times as far past it. A
+     * score that falls out again is likely a win or a loss, and the window is
+     * opened all the way.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to search
+     * @param expected      the expected score, or NO_SCORE to search the full window
+     * @return              the score of the board
+     */
+    private int searchRoot (Board.State player, Board board, int expected) {
+        int aspirationWindow = options.aspirationWindow;
+        if (expected == NO_SCORE || aspirationWindow == 0 || Math.abs(expected) > WIN_THRESHOLD) {
+            return alphaBetaPruning(player, board, -INFINITY, INFINITY, 0, maxPly);
+        }
+
+        int alpha = (int) Math.max((long) expected - aspirationWindow, -INFINITY);
+        int beta = (int) Math.min((long) expected + aspirationWindow, INFINITY);
+        long window = 4L * aspirationWindow;
+        while (true) {
+            int score = alphaBetaPruning(player, board, alpha, beta, 0, maxPly);
+
+            if (aborted) {
+                return 0;
+            }
+            if (score <= alpha && alpha != -INFINITY) {
+                beta = score + 1;
+                alpha = (int) Math.max(score - window, -INFINITY);
+            } else if (score >= beta && beta != INFINITY) {
+                alpha = score - 1;
+                beta = (int) Math.min(score + window, INFINITY);
+            } else {
+                return score;
+            }
+            window = INFINITY;
+            stats.researches++;
+        }
+    }
+
+    /**
+     * Play the centre cell on an empty board, where there is nothing to search.
+     * @param board         the Tic Tac Toe board to play on
+     * @return              true if the move was played
+     */
+    private static boolean playOpening (Board board) {
+        int move = openingMove(board);
+        if(move == -1) {
+        	return false;
         }
-        */
         
+        board.move(move);
+        return true;
+    }
+
+    /**
+     * Get the move played on an empty board without searching: the centre cell.
+     * @param board         the Tic Tac Toe board to play on
+     * @return              the centre cell, or -1 if the board is not empty
+     */
+    static int openingMove (Board board) {
         int width = board.getBoardWidth();
         
-        if(board.getAvailableMoves().size() == width * width) {
-        	if(width % 2 == 1) {
-        		board.move(width * width / 2);
-        		board.setPreMove(width * width / 2);
-        	}
-        	else {
-        		board.move(width * width / 2 - width / 2 - 1);
-        		board.setPreMove(width * width / 2 - width / 2 - 1);
-        	}
+        if(board.getAvailableMoves().size() != width * width) {
+        	return -1;
         }
-        else {        
-        	alphaBetaPruning(player, board, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0);
+        
+        if(width % 2 == 1) {
+        	return width * width / 2;
+        }
+        else {
+        	return width * width / 2 - width / 2 - 1;
         }
     }
 
+    /**
+     * Play the move of the opening book, if the position is in it.
+     * @param board         the Tic Tac Toe board to play on
+     * @return              true if the move was played
+     */
+    private static boolean playBookMove (Board board) {
+        int move = bookMove(board);
+        if (move == -1) {
+            return false;
+        }
+
+        String player = board.getTurn().name();
+        board.move(move);
+        if (verbose) {
+            System.out.println("Player " + player + " moves at (" + move / board.getBoardWidth() + "," + move % board.getBoardWidth() + ") from the opening book");
+        }
+        return true;
+    }
+
+    /**
+     * Play the move chosen by the search.
+     * @param board         the Tic Tac Toe board to play on
+     * @param result        the deepest completed iteration
+     * @return              the statistics of the search
+     */
+    private static SearchStats playBestMove (Board board, Result result) {
+        int bestMove = result.move;
+        if (bestMove == -1) {
+            // Every candidate was filtered out, any empty cell will do.
+            bestMove = board.getAvailableMoves().get(0);
+        }
+
+        String player = board.getTurn().name();
+        board.move(bestMove);
+        if (verbose) {
+            System.out.println("Player " + player + " moves at (" + bestMove / board.getBoardWidth() + "," + bestMove % board.getBoardWidth() + "), score = " + result.score + ", " + result.stats);
+        }
+        return result.stats;
+    }
+
     /**
      * The meat of the algorithm.
      * @param player        the player that the AI will identify as
@@ -76,18 +684,34 @@ class AlphaBetaAdvanced {
      * @param alpha         the alpha value
      * @param beta          the beta value
      * @param currentPly    the current depth
+     * @param depth         the remaining depth, less than maxPly - currentPly if the line was reduced,
+     *                      and below 0 in the quiescence search
      * @return              the score of the board
      */
-    private static int alphaBetaPruning (Board.State player, Board board, double alpha, double beta, int currentPly) {
+    private int alphaBetaPruning (Board.State player, Board board, int alpha, int beta, int currentPly, int depth) {
     	
-        if (currentPly++ == maxPly || board.isGameOver()) {
+        if (aborted || (++stats.nodes & 1023) == 0 && (System.nanoTime() > deadline || id != 0 && stopped.get() || cancelled.get())) {
+        	aborted = true;
+        	return 0;
+        }
+        
+        if (currentPly >= stats.selectiveDepth) {
+            stats.selectiveDepth = currentPly;
+        }
+        
+        currentPly++;
+        if (board.isGameOver() || depth <= -options.quiescencePlies) {
+            stats.evaluations++;
         	return evaluate(player, board, currentPly);
         }
+        if (depth <= 0) {
+            return quiesce(player, board, alpha, beta, currentPly, depth);
+        }
         
         if (board.getTurn() == Board.State.O) {
-            return getMax(player, board, alpha, beta, currentPly);
+            return getMax(player, board, alpha, beta, currentPly, depth);
         } else {
-            return getMin(player, board, alpha, beta, currentPly);
+            return getMin(player, board, alpha, beta, currentPly, depth);
         }
     }
 
@@ -98,40 +722,109 @@ class AlphaBetaAdvanced {
      * @param alpha         the alpha value
      * @param beta          the beta value
      * @param currentPly    the current depth
+     * @param depth         the remaining depth
      * @return              the score of the board
      */
-    private static int getMax (Board.State player, Board board, double alpha, double beta, int currentPly) {
+    private int getMax (Board.State player, Board board, int alpha, int beta, int currentPly, int depth) {
         int indexOfBestMove = -1;
+        int bestScore = -INFINITY;
+        int originalAlpha = alpha;
+        long key = board.getZobristKey();
+        long entry = table.probe(key);
+        int tableMove = -1;
+        stats.tableProbes++;
         
-        for (Integer theMove : board.getAvailableMoves()) {
-            Board modifiedBoard = board.getDeepCopy();
+        if (entry != TranspositionTable.MISS) {
+            stats.tableHits++;
+            tableMove = TranspositionTable.move(entry);
+            int score = fromTable(TranspositionTable.score(entry), currentPly);
+            if (currentPly > 1 && TranspositionTable.depth(entry) >= depth && isCutoff(entry, score, alpha, beta)) {
+                return score;
+            }
+        }
+        
+        // Near the leaves, a quiet move cannot lift a score this far below alpha.
+        int futileScore = -INFINITY;
+        if (options.futilityPruning && currentPly > 1 && depth < FUTILITY_MARGINS.length && Math.abs(alpha) < WIN_THRESHOLD) {
+            int margin = evaluate(player, board, currentPly) + FUTILITY_MARGINS[depth];
+            if (margin <= alpha) {
+                futileScore = margin;
+            }
+        }
+        
+        int[] moves = moveBuffer(currentPly);
+        int[] order = orderBuffer(currentPly);
+        int moveCount = generateMoves(board, moves, order, currentPly,
+                currentPly == 1 && previousBestMove != -1 ? previousBestMove : tableMove);
+        
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = nextMove(moves, order, i, moveCount);
+            int reduction = reduction(board, theMove, i, depth, futileScore != -INFINITY);
             
-            if(modifiedBoard.isUseless(theMove)) continue;
+            if (reduction < 0) {
+                stats.futilityPrunes++;
+                bestScore = Math.max(bestScore, futileScore);
+                continue;
+            }
             
-            modifiedBoard.move(theMove);
-            int score = alphaBetaPruning(player, modifiedBoard, alpha, beta, currentPly);
+            board.makeMove(theMove);
+            int score = 0;
+            boolean fullWindow = i == 0 || !options.principalVariation && reduction == 0;
+            if (!fullWindow) {
+                // Prove the move is no better than alpha, at a reduced depth first
+                // for a late quiet move, and search it fully if not.
+                score = alphaBetaPruning(player, board, alpha, alpha + 1, currentPly, depth - 1 - reduction);
+                if (reduction > 0 && score > alpha && !aborted) {
+                    stats.researches++;
+                    score = alphaBetaPruning(player, board, alpha, alpha + 1, currentPly, depth - 1);
+                }
+                fullWindow = score > alpha && score < beta && !aborted;
+                if (fullWindow) {
+                    stats.researches++;
+                }
+            }
+            if (fullWindow) {
+                score = alphaBetaPruning(player, board, alpha, beta, currentPly, depth - 1);
+            }
+            board.unmakeMove();
+            
+            if (aborted) {
+                return 0;
+            }
             //System.out.println("Player O moves at (" + theMove / board.getBoardWidth() + "," + theMove % board.getBoardWidth() + "), score = " + score);
             
             
+            if (score > bestScore) {
+                bestScore = score;
+            }
             if (score > alpha) {
                 alpha = score;
                 indexOfBestMove = theMove;
             }
 
             if (alpha >= beta) {
+                recordCutoff(theMove, i, currentPly, depth);
                 break;
             }
         }
         
+        if (moveCount == 0) {
+            bestScore = alpha;
+        }
+        
         if (indexOfBestMove != -1) {
-            board.move(indexOfBestMove);
-            if(currentPly == 1) {
-            	System.out.println("Player O moves at (" + indexOfBestMove / board.getBoardWidth() + "," + indexOfBestMove % board.getBoardWidth() + "), alpha = " + alpha + ",beta = " + beta);
-            	board.setPreMove(indexOfBestMove);
-            }
+            table.store(key, toTable(bestScore, currentPly), indexOfBestMove, depth,
+                    alpha >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT);
+        } else if (originalAlpha != -INFINITY) {
+            table.store(key, toTable(bestScore, currentPly), tableMove, depth, TranspositionTable.UPPER_BOUND);
         }
         
-        return (int)alpha;
+        if (currentPly == 1) {
+            rootBestMove = indexOfBestMove;
+        }
+        
+        // Fail soft: outside the window the score is still the tightest bound found.
+        return bestScore;
     }
 
     /**
@@ -141,46 +834,366 @@ class AlphaBetaAdvanced {
      * @param alpha         the alpha value
      * @param beta          the beta value
      * @param currentPly    the current depth
+     * @param depth         the remaining depth
      * @return              the score of the board
      */
-    private static int getMin (Board.State player, Board board, double alpha, double beta, int currentPly) {
+    private int getMin (Board.State player, Board board, int alpha, int beta, int currentPly, int depth) {
         int indexOfBestMove = -1;
+        int bestScore = INFINITY;
+        int originalBeta = beta;
+        long key = board.getZobristKey();
+        long entry = table.probe(key);
+        int tableMove = -1;
+        stats.tableProbes++;
         
-        for (Integer theMove : board.getAvailableMoves()) {
-
-            Board modifiedBoard = board.getDeepCopy();
+        if (entry != TranspositionTable.MISS) {
+            stats.tableHits++;
+            tableMove = TranspositionTable.move(entry);
+            int score = fromTable(TranspositionTable.score(entry), currentPly);
+            if (currentPly > 1 && TranspositionTable.depth(entry) >= depth && isCutoff(entry, score, alpha, beta)) {
+                return score;
+            }
+        }
+        
+        // Near the leaves, a quiet move cannot push a score this far above beta down.
+        int futileScore = INFINITY;
+        if (options.futilityPruning && currentPly > 1 && depth < FUTILITY_MARGINS.length && Math.abs(beta) < WIN_THRESHOLD) {
+            int margin = evaluate(player, board, currentPly) - FUTILITY_MARGINS[depth];
+            if (margin >= beta) {
+                futileScore = margin;
+            }
+        }
+        
+        int[] moves = moveBuffer(currentPly);
+        int[] order = orderBuffer(currentPly);
+        int moveCount = generateMoves(board, moves, order, currentPly,
+                currentPly == 1 && previousBestMove != -1 ? previousBestMove : tableMove);
+        
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = nextMove(moves, order, i, moveCount);
+            int reduction = reduction(board, theMove, i, depth, futileScore != INFINITY);
             
-            if(modifiedBoard.isUseless(theMove)) continue;
+            if (reduction < 0) {
+                stats.futilityPrunes++;
+                bestScore = Math.min(bestScore, futileScore);
+                continue;
+            }
             
-            modifiedBoard.move(theMove);
-            int score = alphaBetaPruning(player, modifiedBoard, alpha, beta, currentPly);
+            board.makeMove(theMove);
+            int score = 0;
+            boolean fullWindow = i == 0 || !options.principalVariation && reduction == 0;
+            if (!fullWindow) {
+                // Prove the move is no better than beta, at a reduced depth first
+                // for a late quiet move, and search it fully if not.
+                score = alphaBetaPruning(player, board, beta - 1, beta, currentPly, depth - 1 - reduction);
+                if (reduction > 0 && score < beta && !aborted) {
+                    stats.researches++;
+                    score = alphaBetaPruning(player, board, beta - 1, beta, currentPly, depth - 1);
+                }
+                fullWindow = score < beta && score > alpha && !aborted;
+                if (fullWindow) {
+                    stats.researches++;
+                }
+            }
+            if (fullWindow) {
+                score = alphaBetaPruning(player, board, alpha, beta, currentPly, depth - 1);
+            }
+            board.unmakeMove();
+            
+            if (aborted) {
+                return 0;
+            }
             
             //System.out.println("Player X moves at (" + theMove / board.getBoardWidth() + "," + theMove % board.getBoardWidth() + "), score = " + score);
             
+            if (score < bestScore) {
+                bestScore = score;
+            }
             if (score < beta) {
                 beta = score;
                 indexOfBestMove = theMove;
             }
 
             if (alpha >= beta) {
+                recordCutoff(theMove, i, currentPly, depth);
                 break;
             }
         }
         
 
+        if (moveCount == 0) {
+            bestScore = beta;
+        }
+
         if (indexOfBestMove != -1) {
-            board.move(indexOfBestMove);
-            if(currentPly == 1) {
-            	System.out.println("Player X moves at (" + indexOfBestMove / board.getBoardWidth() + "," + indexOfBestMove % board.getBoardWidth() + "), alpha = " + alpha + ",beta = " + beta);
-            	board.setPreMove(indexOfBestMove);
+            table.store(key, toTable(bestScore, currentPly), indexOfBestMove, depth,
+                    alpha >= beta ? TranspositionTable.UPPER_BOUND : TranspositionTable.EXACT);
+        } else if (originalBeta != INFINITY) {
+            table.store(key, toTable(bestScore, currentPly), tableMove, depth, TranspositionTable.LOWER_BOUND);
+        }
+
+        if (currentPly == 1) {
+            rootBestMove = indexOfBestMove;
+        }
+        return bestScore;
+    }
+
+    /**
+     * Settle the threats standing on the board past the depth, so that a four
+     * left on the board at the horizon is answered before the board is scored
+     * (quiescence search). A player with a window of M - 1 stones wins, and
+     * one facing two such cells loses. One such cell leaves a single move, the
+     * block, which is played and the new position settled in turn. Without a
+     * four on the board, the board is scored as it stands.
+     * @param player        the player that the AI will identify as
+     * @param board         the Tic Tac Toe board to play on
+     * @param alpha         the alpha value
+     * @param beta          the beta value
+     * @param currentPly    the current depth
+     * @param depth         the remaining depth, 0 or less; counts the blocks played
+     * @return              the score of the board
+     */
+    private int quiesce (Board.State player, Board board, int alpha, int beta, int currentPly, int depth) {
+        stats.quiescenceNodes++;
+        int m = board.getWinLength();
+        Board.State turn = board.getTurn();
+        Board.State opponent = (turn == Board.State.X) ? Board.State.O : Board.State.X;
+        boolean max = turn == Board.State.O;
+
+        // An open window of M - 1 stones is missing one cell, a winning move.
+        if (board.getWinningWindows(turn, m - 1) > 0) {
+            return max ? Integer.MAX_VALUE - (currentPly + 1) : Integer.MIN_VALUE + (currentPly + 1);
+        }
+
+        if (board.getWinningWindows(opponent, m - 1) > 0) {
+            int[] moves = moveBuffer(currentPly);
+            int available = board.copyCandidateMoves(moves);
+            int block = -1;
+            for (int i = 0; i < available; i++) {
+                if (board.isWinningMove(moves[i], opponent)) {
+                    if (block != -1) {
+                        return max ? Integer.MIN_VALUE + (currentPly + 2) : Integer.MAX_VALUE - (currentPly + 2);
+                    }
+                    block = moves[i];
+                }
+            }
+            if (block != -1) {
+                board.makeMove(block);
+                int score = alphaBetaPruning(player, board, alpha, beta, currentPly, depth - 1);
+                board.unmakeMove();
+                return score;
+            }
+        }
+
+        stats.evaluations++;
+        return evaluate(player, board, currentPly);
+    }
+
+    /**
+     * Decide how much shallower to search a move. The first moves and the
+     * moves that make or block an open three are searched to the full depth;
+     * later quiet moves are reduced by a ply, or two when they come very late
+     * in a deep node, and at a futile node they are not searched at all.
+     * @param board         the Tic Tac Toe board, before the move
+     * @param theMove       the move
+     * @param index         how many moves were searched before it
+     * @param depth         the remaining depth of the node
+     * @param futile        whether quiet moves at the node cannot reach the window
+     * @return              the plies to take off, or -1 to skip the move
+     */
+    private int reduction (Board board, int theMove, int index, int depth, boolean futile) {
+        boolean reducible = options.lateMoveReductions && depth >= 3 && index >= LATE_MOVES;
+        if (index == 0 || !futile && !reducible || board.getMoveScore(theMove) >= TACTICAL_MOVE) {
+            return 0;
+        }
+        if (futile) {
+            return -1;
+        }
+        stats.reductions++;
+        return (depth >= 5 && index >= 4 * LATE_MOVES) ? 2 : 1;
+    }
+
+
+    /**
+     * Give each helper thread its own order of the root moves, so that the
+     * threads start on different parts of the tree.
+     * @param moves         the candidate moves
+     * @param moveCount     the number of candidate moves
+     */
+    private void shuffleRoot (int[] moves, int moveCount) {
+        if (id == 0 || moveCount < 2) {
+            return;
+        }
+
+        java.util.Random random = new java.util.Random(id * 31L + maxPly);
+        for (int i = moveCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = moves[i];
+            moves[i] = moves[j];
+            moves[j] = swap;
+        }
+    }
+
+    /**
+     * Collect the candidate moves of a node and give each an ordering score.
+     * The best move from the table or the previous iteration comes first, then
+     * the killer moves of the ply, then the rest by history and by the window
+     * score of the cell.
+     * @param board         the Tic Tac Toe board to play on
+     * @param moves         filled with the candidate moves
+     * @param order         filled with the ordering score of each move
+     * @param currentPly    the current depth
+     * @param bestMove      the move to search first, or -1
+     * @return              the number of candidate moves
+     */
+    private int generateMoves (Board board, int[] moves, int[] order, int currentPly, int bestMove) {
+        int available = board.copyCandidateMoves(moves);
+        int moveCount = 0;
+        
+        for (int i = 0; i < available; i++) {
+            if(!board.isUseless(moves[i])) {
+                moves[moveCount++] = moves[i];
+            }
+        }
+        stats.prunedMoves += available - moveCount;
+        
+        if (currentPly == 1) {
+            shuffleRoot(moves, moveCount);
+        }
+        
+        int[] killer = killers[currentPly];
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = moves[i];
+            if (theMove == bestMove) {
+                order[i] = 1 << 30;
+            } else if (theMove == killer[0]) {
+                order[i] = 1 << 29;
+            } else if (theMove == killer[1]) {
+                order[i] = (1 << 29) - 1;
+            } else {
+                order[i] = Math.min(history[theMove], 1 << 27) + board.getMoveScore(theMove);
             }
         }
-        return (int)beta;
+        return moveCount;
+    }
+
+    /**
+     * Bring the best of the remaining moves to position i. Selecting one move
+     * at a time is cheaper than sorting when a cutoff comes early.
+     * @param moves         the candidate moves
+     * @param order         the ordering score of each move
+     * @param i             the number of moves already searched
+     * @param moveCount     the number of candidate moves
+     * @return              the move to search next
+     */
+    private static int nextMove (int[] moves, int[] order, int i, int moveCount) {
+        int best = i;
+        for (int j = i + 1; j < moveCount; j++) {
+            if (order[j] > order[best]) {
+                best = j;
+            }
+        }
+        
+        int theMove = moves[best];
+        moves[best] = moves[i];
+        order[best] = order[i];
+        moves[i] = theMove;
+        return theMove;
+    }
+
+    /**
+     * Remember a move that caused a cutoff, as a killer move of its ply and in
+     * the history of its cell.
+     * @param theMove       the move
+     * @param index         how many moves were searched before it
+     * @param currentPly    the current depth
+     * @param depth         the remaining depth
+     */
+    private void recordCutoff (int theMove, int index, int currentPly, int depth) {
+        stats.cutoffs++;
+        stats.cutoffIndexSum += index;
+        if (index == 0) {
+            stats.firstMoveCutoffs++;
+        }
+        
+        history[theMove] += depth * depth;
+        int[] killer = killers[currentPly];
+        if (killer[0] != theMove) {
+            killer[1] = killer[0];
+            killer[0] = theMove;
+        }
+    }
+
+    /**
+     * Get the buffer for the candidate moves of a ply.
+     * @param currentPly    the current depth
+     * @return              an array large enough for every empty cell
+     */
+    private int[] moveBuffer (int currentPly) {
+        if (moveBuffers[currentPly] == null) {
+            moveBuffers[currentPly] = new int[history.length];
+        }
+        return moveBuffers[currentPly];
+    }
+
+    /**
+     * Get the buffer for the ordering scores of a ply.
+     * @param currentPly    the current depth
+     * @return              an array large enough for every empty cell
+     */
+    private int[] orderBuffer (int currentPly) {
+        if (orderBuffers[currentPly] == null) {
+            orderBuffers[currentPly] = new int[history.length];
+        }
+        return orderBuffers[currentPly];
+    }
+
+    /**
+     * Check whether a table entry settles the score of a node on its own.
+     * @param entry         the transposition table entry
+     * @param score         the score of the entry
+     * @param alpha         the alpha value
+     * @param beta          the beta value
+     * @return              true if the node does not need to be searched
+     */
+    private static boolean isCutoff (long entry, int score, int alpha, int beta) {
+        switch (TranspositionTable.flag(entry)) {
+            case TranspositionTable.EXACT:
+                return true;
+            case TranspositionTable.LOWER_BOUND:
+                return score >= beta;
+            default:
+                return score <= alpha;
+        }
     }
 
+    /**
+     * Make a win score relative to the node it is stored at.
+     * @param score         the score, counted from the root
+     * @param currentPly    the depth of the node
+     * @return              the score to store in the table
+     */
+    private static int toTable (int score, int currentPly) {
+        if (score > WIN_THRESHOLD) return score + currentPly;
+        if (score < -WIN_THRESHOLD) return score - currentPly;
+        return score;
+    }
 
     /**
-     * Get the score of the board. Takes depth into account.
+     * Make a win score read from the table relative to the root again.
+     * @param score         the score stored in the table
+     * @param currentPly    the depth of the node
+     * @return              the score, counted from the root
+     */
+    private static int fromTable (int score, int currentPly) {
+        if (score > WIN_THRESHOLD) return score - currentPly;
+        if (score < -WIN_THRESHOLD) return score + currentPly;
+        return score;
+    }
+
+    /**
+     * Get the score of the board. Takes depth into account. Short of a win,
+     * adds up the window and pattern scores of O and takes away those of X.
      * @param player        the play that the AI will identify as
      * @param board         the Tic Tac Toe board to play on
      * @param currentPly    the current depth
@@ -199,8 +1212,56 @@ class AlphaBetaAdvanced {
         } else if (board.isGameOver() && board.getWinner() == Board.State.X) {
             return Integer.MIN_VALUE + currentPly;
         } else {
-        	return board.getScoreO() - board.getScoreX();
+        	return board.getScoreO() + board.getPatternScoreO() - board.getScoreX() - board.getPatternScoreX();
+        }
+    }
+
+    /**
+     * The deepest completed iteration of all the search threads.
+     */
+    private static class Result {
+
+        private int depth;
+        private int move = -1;
+        private int score;
+        private final SearchStats stats = new SearchStats();
+
+        /**
+         * Keep an iteration if it is deeper than the best one so far.
+         * @param depth         the depth of the iteration
+         * @param move          the best move of the iteration
+         * @param score         the score of the move
+         */
+        synchronized void offer (int depth, int move, int score) {
+            if (depth > this.depth && move != -1) {
+                this.depth = depth;
+                this.move = move;
+                this.score = score;
+            }
         }
+
+        /**
+         * Count the nodes, cutoffs and table probes of a thread.
+         * @param threadStats   the statistics of the thread
+         */
+        synchronized void addStats (SearchStats threadStats) {
+            stats.add(threadStats);
+        }
+
+        /**
+         * Complete the statistics once every thread is done, and publish them.
+         * @param startTime     the System.nanoTime value at which the search started
+         * @return              this result
+         */
+        synchronized Result finish (long startTime) {
+            stats.depth = depth;
+            stats.move = move;
+            stats.score = score;
+            stats.nanos = System.nanoTime() - startTime;
+            SearchMetrics.record(stats);
+            return this;
+        }
+
     }
 
 }
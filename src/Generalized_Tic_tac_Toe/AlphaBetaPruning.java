@@ -7,12 +7,19 @@ import Generalized_Tic_tac_Toe.Board;
  */
 class AlphaBetaPruning {
 
-    private static double maxPly;
+    // State of one search, so that games on different threads do not share it.
+    private final double maxPly;
+    private final int[][] moveBuffers;
 
     /**
-     * AlphaBetaPruning cannot be instantiated.
+     * AlphaBetaPruning can only be instantiated by run.
+     * @param board         the Tic Tac Toe board to play on
+     * @param maxPly        the maximum depth
      */
-    private AlphaBetaPruning () {}
+    private AlphaBetaPruning (Board board, double maxPly) {
+        this.maxPly = maxPly;
+        this.moveBuffers = new int[board.getAvailableMoves().size() + 2][];
+    }
 
     /**
      * Execute the algorithm.
@@ -25,8 +32,7 @@ class AlphaBetaPruning {
             throw new IllegalArgumentException("Maximum depth must be greater than 0.");
         }
 
-        AlphaBetaPruning.maxPly = maxPly;
-        alphaBetaPruning(player, board, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0);
+        new AlphaBetaPruning(board, maxPly).alphaBetaPruning(player, board, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0);
     }
 
     /**
@@ -38,7 +44,7 @@ class AlphaBetaPruning {
      * @param currentPly    the current depth
      * @return              the score of the board
      */
-    private static int alphaBetaPruning (Board.State player, Board board, double alpha, double beta, int currentPly) {
+    private int alphaBetaPruning (Board.State player, Board board, double alpha, double beta, int currentPly) {
         if (currentPly++ == maxPly || board.isGameOver()) {
             return score(player, board);
         }
@@ -59,14 +65,18 @@ class AlphaBetaPruning {
      * @param currentPly    the current depth
      * @return              the score of the board
      */
-    private static int getMax (Board.State player, Board board, double alpha, double beta, int currentPly) {
+    private int getMax (Board.State player, Board board, double alpha, double beta, int currentPly) {
         int indexOfBestMove = -1;
 
-        for (Integer theMove : board.getAvailableMoves()) {
+        int[] moves = moveBuffer(board, currentPly);
+        int moveCount = board.copyAvailableMoves(moves);
 
-            Board modifiedBoard = board.getDeepCopy();
-            modifiedBoard.move(theMove);
-            int score = alphaBetaPruning(player, modifiedBoard, alpha, beta, currentPly);
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = moves[i];
+
+            board.makeMove(theMove);
+            int score = alphaBetaPruning(player, board, alpha, beta, currentPly);
+            board.unmakeMove();
 
             if (score > alpha) {
                 alpha = score;
@@ -79,7 +89,7 @@ class AlphaBetaPruning {
             }
         }
 
-        if (indexOfBestMove != -1) {
+        if (indexOfBestMove != -1 && currentPly == 1) {
             board.move(indexOfBestMove);
         }
         return (int)alpha;
@@ -94,15 +104,18 @@ class AlphaBetaPruning {
      * @param currentPly    the current depth
      * @return              the score of the board
      */
-    private static int getMin (Board.State player, Board board, double alpha, double beta, int currentPly) {
+    private int getMin (Board.State player, Board board, double alpha, double beta, int currentPly) {
         int indexOfBestMove = -1;
 
-        for (Integer theMove : board.getAvailableMoves()) {
+        int[] moves = moveBuffer(board, currentPly);
+        int moveCount = board.copyAvailableMoves(moves);
 
-            Board modifiedBoard = board.getDeepCopy();
-            modifiedBoard.move(theMove);
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = moves[i];
 
-            int score = alphaBetaPruning(player, modifiedBoard, alpha, beta, currentPly);
+            board.makeMove(theMove);
+            int score = alphaBetaPruning(player, board, alpha, beta, currentPly);
+            board.unmakeMove();
 
             if (score < beta) {
                 beta = score;
@@ -115,12 +128,26 @@ class AlphaBetaPruning {
             }
         }
 
-        if (indexOfBestMove != -1) {
+        if (indexOfBestMove != -1 && currentPly == 1) {
             board.move(indexOfBestMove);
         }
         return (int)beta;
     }
 
+    /**
+     * Get the buffer for the moves of a ply, so the search does not allocate
+     * an array per node.
+     * @param board         the Tic Tac Toe board to play on
+     * @param currentPly    the current depth
+     * @return              an array large enough for every empty cell
+     */
+    private int[] moveBuffer (Board board, int currentPly) {
+        if (moveBuffers[currentPly] == null) {
+            moveBuffers[currentPly] = new int[board.getAvailableMoves().size()];
+        }
+        return moveBuffers[currentPly];
+    }
+
     /**
      * Get the score of the board.
      * @param player        the play that the AI will identify as
@@ -0,0 +1,269 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyses a stream of positions on several threads and writes the best move,
+ * score and search statistics of each position, in the order the positions
+ * were read.
+ *
+ * Each input line holds the width, M and the moves from the empty board, X
+ * first, separated by spaces, for example "15 5 112 113 97". Each output line
+ * holds the input line number, the best move, its score (from the point of
+ * view of O), the completed and selective depths, the nodes, the nodes per
+ * second and the time in milliseconds, separated by tabs; a line that cannot
+ * be analysed gets "error" and the reason instead.
+ *
+ * At most a fixed number of positions are read ahead of the output. When
+ * they are all waiting, for a slow search or a slow consumer, the reader
+ * stops reading, so memory stays bounded whatever the size of the input.
+ */
+public class BatchAnalysis {
+
+    // Marks the end of the input for the writer.
+    private static final CompletableFuture<String> END = CompletableFuture.completedFuture(null);
+
+    private final int ply;
+    private final Duration budget;
+    private final int threads;
+    private final int window;
+
+    /**
+     * Construct BatchAnalysis.
+     * @param ply       the maximum depth of each search
+     * @param budget    the most time to spend on each position
+     * @param threads   the number of positions analysed at once
+     * @param window    the number of positions that may be read ahead of the output
+     */
+    BatchAnalysis (int ply, Duration budget, int threads, int window) {
+        if (ply < 1 || threads < 1 || window < threads) {
+            throw new IllegalArgumentException("The depth and threads must be at least 1 and the window at least the threads.");
+        }
+        this.ply = ply;
+        this.budget = budget;
+        this.threads = threads;
+        this.window = window;
+    }
+
+    /**
+     * Analyse every position of the input.
+     * @param input         the positions, one per line
+     * @param output        where to write the analyses, one per line
+     * @return              the number of positions read
+     * @throws IOException  if the input cannot be read or the output written
+     */
+    long run (Reader input, Writer output) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "BatchAnalysis worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<CompletableFuture<String>> pending = new ArrayBlockingQueue<>(window);
+        Throwable[] writeFailure = new Throwable[1];
+
+        Thread writer = new Thread(() -> {
+            try {
+                write(pending, output);
+            } catch (IOException | RuntimeException | Error e) {
+                writeFailure[0] = e;
+            }
+        }, "BatchAnalysis writer");
+        writer.start();
+
+        long count = 0;
+        try (BufferedReader reader = new BufferedReader(input)) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                long number = ++count;
+                String position = line;
+                if (!enqueue(pending, CompletableFuture.supplyAsync(() -> analyse(number, position), pool), writer)) {
+                    break;
+                }
+            }
+            enqueue(pending, END, writer);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // A writer that stopped early left the output short, so never return normally.
+        if (writeFailure[0] instanceof IOException) {
+            throw (IOException) writeFailure[0];
+        }
+        if (writeFailure[0] instanceof RuntimeException) {
+            throw (RuntimeException) writeFailure[0];
+        }
+        if (writeFailure[0] != null) {
+            throw (Error) writeFailure[0];
+        }
+        return count;
+    }
+
+    /**
+     * Wait for room in the window, which is the backpressure on the reader,
+     * and add an analysis to it.
+     * @param pending       the analyses in input order
+     * @param analysis      the analysis to add
+     * @param writer        the thread writing the analyses
+     * @return              false if the writer stopped, so nothing will make room
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static boolean enqueue (BlockingQueue<CompletableFuture<String>> pending, CompletableFuture<String> analysis,
+            Thread writer) throws InterruptedException {
+        while (!pending.offer(analysis, 100, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the analyses in input order as they complete. The output is
+     * flushed whenever the next analysis is not ready yet, so a consumer
+     * reading the stream sees each line as soon as it can be written. An
+     * analysis that failed gets an error line, and the rest are still written.
+     * @param pending       the analyses in input order, ending with END
+     * @param output        where to write
+     * @throws IOException  if the output cannot be written
+     */
+    private static void write (BlockingQueue<CompletableFuture<String>> pending, Writer output) throws IOException {
+        try {
+            for (long number = 1; ; number++) {
+                CompletableFuture<String> next = pending.take();
+                if (next == END) {
+                    break;
+                }
+                if (!next.isDone()) {
+                    output.flush();
+                }
+                String analysis;
+                try {
+                    analysis = next.get();
+                } catch (ExecutionException e) {
+                    analysis = number + "\terror\t" + e.getCause();
+                }
+                output.write(analysis);
+                output.write('\n');
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Analyse one position.
+     * @param number        the number of the input line
+     * @param line          the width, M and the moves
+     * @return              the output line
+     */
+    private String analyse (long number, String line) {
+        Board board;
+        try {
+            board = parse(line);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return number + "\terror\t" + e.getMessage();
+        }
+        if (board.isGameOver()) {
+            return number + "\terror\tThe game is over.";
+        }
+
+        SearchStats stats;
+        try {
+            stats = AlphaBetaAdvanced.analyse(board, ply, budget);
+        } catch (RuntimeException e) {
+            return number + "\terror\t" + e;
+        }
+        return number + "\t" + stats.getMove() + "\t" + stats.getScore() + "\t" + stats.getDepth()
+                + "\t" + stats.getSelectiveDepth() + "\t" + stats.getNodes() + "\t" + stats.getNodesPerSecond()
+                + "\t" + stats.getNanos() / 1000000;
+    }
+
+    /**
+     * Build the board of an input line.
+     * @param line          the width, M and the moves
+     * @return              the board after the moves
+     */
+    static Board parse (String line) {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("A position needs a width and M.");
+        }
+
+        int width = Integer.parseInt(fields[0]);
+        int m = Integer.parseInt(fields[1]);
+        if (width < 1 || width > GameServer.MAX_WIDTH || m < 1 || m > width) {
+            throw new IllegalArgumentException("The width must be between 1 and " + GameServer.MAX_WIDTH
+                    + " and M between 1 and the width.");
+        }
+
+        Board board = new Board(width, m);
+        for (int i = 2; i < fields.length; i++) {
+            int move = Integer.parseInt(fields[i]);
+            if (move < 0 || move >= width * width || !board.move(move)) {
+                throw new IllegalArgumentException("Move " + fields[i] + " is off the board or taken.");
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Analyse positions from the command line, reading a file or, with "-",
+     * the standard input, and writing to the standard output. For example
+     * "positions.txt 6 1000 4 64" searches each position to depth 6 or for
+     * 1000 ms, 4 positions at a time, reading at most 64 positions ahead. A
+     * sixth argument searches each position on that many threads, 1 by default.
+     * @param args          input, depth, ms per position, threads, window and search threads
+     * @throws IOException  if the input cannot be read
+     */
+    public static void main (String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: BatchAnalysis input|- ply millisPerPosition [threads [window [searchThreads]]]");
+            return;
+        }
+        if (args.length > 5) {
+            AlphaBetaAdvanced.setThreadCount(Integer.parseInt(args[5]));
+        }
+
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int window = args.length > 4 ? Integer.parseInt(args[4]) : 4 * threads;
+        BatchAnalysis batch = new BatchAnalysis(Integer.parseInt(args[1]), Duration.ofMillis(Long.parseLong(args[2])), threads, window);
+
+        AlphaBetaAdvanced.setVerbose(false);
+        Reader input = args[0].equals("-") ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+        Writer output = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+        long start = System.nanoTime();
+        long count = batch.run(input, output);
+        System.err.printf("Analysed %d positions in %.1f s.%n", count, (System.nanoTime() - start) / 1e9);
+    }
+
+}
@@ -1,38 +1,115 @@
 package Generalized_Tic_tac_Toe;
 
-import java.util.HashSet;
-
 /**
  * Represents the Tic Tac Toe board.
+ *
+ * The cells are kept as one packed bitset per player. Each row is stored with
+ * one extra sentinel bit that is never set, so a line of cells walked with a
+ * fixed stride (1, stride, stride + 1 or stride - 1) stops at the edge of the
+ * board instead of wrapping around to the next row. The width of the board and
+ * the number of stones in a row that wins are chosen per board; the tables that
+ * only depend on them are shared through Geometry.
+ *
+ * The stones of each player are also counted per winning window, using the
+ * Geometry table of the windows through each cell, and the scores are kept as
+ * running totals. A move only touches the windows through its cell, and
+ * reading the score of a position costs nothing.
+ *
+ * For M up to Patterns.MAX_M, every cell also keeps a base-3 key of the line
+ * around it in each direction, seen from each player, so the shape a player
+ * would make by playing the cell is a table lookup. The pattern score of a
+ * player is the total value of those shapes over the empty cells, kept up to
+ * date as the keys change. The keys are only brought up to date when a shape
+ * or a pattern score is asked for, so moves played and taken back by a
+ * search that never looks at them, such as the threat search and the
+ * playouts, cost no more than the window counts.
  */
 public class Board {
 
     static final int BOARD_WIDTH = 15;
     static final int M = 5;
+    static final int FRONTIER_RADIUS = 3;
+
+    private static final int[][] STEPS = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}};
+
+    private final Geometry geometry;
+    private final Patterns patterns;
+    private final int width;
+    private final int m;
+    private final int stride;
 
     public enum State {Blank, X, O}
-    private State[][] board;
+    private long[] bitsX;
+    private long[] bitsO;
     private State playersTurn;
     private State winner;
-    private HashSet<Integer> movesAvailable;
+    private IntSet movesAvailable;
+    private IntSet frontier;
+    private int[] neighbours;
     private int[] winningWindowsX;
     private int[] winningWindowsO;
+    private int[] windowCountX;
+    private int[] windowCountO;
     private int scoreX;
     private int scoreO;
+    private int[] lineKeysX;
+    private int[] lineKeysO;
+    private int patternScoreX;
+    private int patternScoreO;
+
+    // The stones written into the line keys: the first patternMoves moves of
+    // the history, and the bits of their cells.
+    private long[] patternBits;
+    private int patternMoves;
+
     private int preMoveRow;
     private int preMoveCol;
     
     private int moveCount;
     private boolean gameOver;
+    private long zobristKey;
+
+    // Undo stack, indexed by the move number. Each entry holds the move and
+    // the state it replaced so that unmakeMove can restore it.
+    private int[] historyMove;
+    private int[] historyPreMove;
+    private State[] historyWinner;
+    private boolean[] historyGameOver;
 
     /**
-     * Construct the Tic Tac Toe board.
+     * Construct the Tic Tac Toe board with the default size.
      */
     Board() {
-        board = new State[BOARD_WIDTH][BOARD_WIDTH];
-        winningWindowsX = new int[M + 1];
-        winningWindowsO = new int[M + 1];
-        movesAvailable = new HashSet<>();
+        this(BOARD_WIDTH, M);
+    }
+
+    /**
+     * Construct the Tic Tac Toe board.
+     * @param width     the number of rows and columns
+     * @param m         the number of stones in a row that wins
+     */
+    public Board(int width, int m) {
+        geometry = Geometry.of(width, m);
+        patterns = Patterns.of(m);
+        this.width = width;
+        this.m = m;
+        stride = geometry.stride;
+        bitsX = new long[geometry.wordCount];
+        bitsO = new long[geometry.wordCount];
+        winningWindowsX = new int[m + 1];
+        winningWindowsO = new int[m + 1];
+        windowCountX = new int[geometry.windowCount];
+        windowCountO = new int[geometry.windowCount];
+        lineKeysX = new int[patterns == null ? 0 : 4 * width * width];
+        lineKeysO = new int[lineKeysX.length];
+        patternBits = new long[geometry.wordCount];
+        movesAvailable = new IntSet(width * width);
+        frontier = new IntSet(width * width);
+        neighbours = new int[width * width];
+        historyMove = new int[width * width];
+        historyPreMove = new int[width * width];
+        historyWinner = new State[width * width];
+        historyGameOver = new boolean[width * width];
         reset();
     }
 
@@ -41,32 +118,79 @@ public class Board {
      * available at the start of the game).
      */
     private void initialize () {
-        for (int row = 0; row < BOARD_WIDTH; row++) {
-            for (int col = 0; col < BOARD_WIDTH; col++) {
-                board[row][col] = State.Blank;
-            }
+        for (int i = 0; i < geometry.wordCount; i++) {
+            bitsX[i] = 0;
+            bitsO[i] = 0;
         }
         
         scoreX = 0;
         scoreO = 0;
         
-        for(int i = 0; i < M + 1; i++) {
+        for(int i = 0; i < m + 1; i++) {
         	winningWindowsX[i] = 0;
         	winningWindowsO[i] = 0;
         }
         
+        for (int i = 0; i < geometry.windowCount; i++) {
+            windowCountX[i] = 0;
+            windowCountO[i] = 0;
+        }
+        
+        initializePatterns();
         movesAvailable.clear();
+        frontier.clear();
+
+        for (int i = 0; i < width * width; i++) {
+            neighbours[i] = 0;
+        }
 
-        for (int i = 0; i < BOARD_WIDTH*BOARD_WIDTH; i++) {
+        for (int i = 0; i < width*width; i++) {
             movesAvailable.add(i);
         }
     }
 
+    /**
+     * Set the line keys of an empty board, where only the edge blocks lines,
+     * and total the pattern scores of every cell.
+     */
+    private void initializePatterns () {
+        patternScoreX = 0;
+        patternScoreO = 0;
+        patternMoves = 0;
+        for (int i = 0; i < geometry.wordCount; i++) {
+            patternBits[i] = 0;
+        }
+        if (patterns == null) {
+            return;
+        }
+
+        int cells = width * width;
+        for (int d = 0; d < STEPS.length; d++) {
+            for (int index = 0; index < cells; index++) {
+                int col = index % width;
+                int row = index / width;
+                int key = 0;
+                for (int offset = 1 - m; offset < m; offset++) {
+                    int x = col + offset * STEPS[d][0];
+                    int y = row + offset * STEPS[d][1];
+                    if (offset != 0 && (x < 0 || x >= width || y < 0 || y >= width)) {
+                        key += 2 * patterns.power(offset);
+                    }
+                }
+                lineKeysX[d * cells + index] = key;
+                lineKeysO[d * cells + index] = key;
+                patternScoreX += patterns.value(key);
+                patternScoreO += patterns.value(key);
+            }
+        }
+    }
+
     /**
      * Restart the game with a new blank board.
      */
     void reset () {
         moveCount = 0;
+        zobristKey = geometry.emptyKey;
         gameOver = false;
         playersTurn = State.X;
         winner = State.Blank;
@@ -79,35 +203,21 @@ public class Board {
      * @return          true if the move has not already been played
      */
     public boolean isUseless (int index) {
-        int col = index % BOARD_WIDTH;
-        int row = index / BOARD_WIDTH;
+        int col = index % width;
+        int row = index / width;
         
-        int radius = 3;
-        
-     // Check Manhattan distance with max limit 2*M - 1
+     // Check Manhattan distance with max limit 2*M - 1. On a board no wider than
+     // 2*M the limits would cut off cells that are needed to block a line.
         int distance = Math.abs(row - preMoveRow) + Math.abs(col - preMoveCol);
-        if(moveCount < 5 && distance > 3) return true;
-        if(moveCount < 10 && distance > 5) return true;
-        if(moveCount < BOARD_WIDTH * BOARD_WIDTH / 2 && distance > 2 * M) return true;
-        
-        
-        
-        // Search for radius M, if all empty, it's a useless move.
-        int start_row = Math.max(0, row - radius);
-        int start_col = Math.max(0, col - radius);
-        int end_row = Math.min(row + radius, BOARD_WIDTH - 1);
-        int end_col = Math.min(col + radius, BOARD_WIDTH - 1);
-        
-        int count = 0;
-        for(int i = start_row; i <= end_row; i++) {
-        	for(int j = start_col; j <= end_col; j++) {
-        		if(board[i][j] != State.Blank) count++;
-        		if(count / moveCount > 1 / 3 || count > 3) return false;
-        	}
+        if(width > 2 * m) {
+        	if(moveCount < 5 && distance > 3) return true;
+        	if(moveCount < 10 && distance > 5) return true;
+        	if(moveCount < width * width / 2 && distance > 2 * m) return true;
         }
         
-        
-        
+        // Count the stones within FRONTIER_RADIUS, if there are too few it's a useless move.
+        int count = neighbours[index];
+        if(count >= moveCount || count > 3) return false;
         
         return true;
     }
@@ -119,7 +229,51 @@ public class Board {
      * @return          true if the move has not already been played
      */
     public boolean move (int index) {
-        return move(index % BOARD_WIDTH, index / BOARD_WIDTH);
+        return makeMove(index);
+    }
+
+    /**
+     * Places an X or an O on the specified index and remembers what it changed,
+     * so that the search can take the move back with unmakeMove instead of
+     * working on a copy of the board.
+     * @param index     the position on the board (example: index 4 is location (0, 1))
+     * @return          true if the move has not already been played
+     */
+    public boolean makeMove (int index) {
+        return move(index % width, index / width);
+    }
+
+    /**
+     * Take back the most recent move, restoring the cell, the winning windows,
+     * the move count, the winner and the previous move.
+     */
+    public void unmakeMove () {
+        if (moveCount == 0) {
+            throw new IllegalStateException("There is no move to take back.");
+        }
+
+        moveCount--;
+        int index = historyMove[moveCount];
+        int col = index % width;
+        int row = index / width;
+        int bit = row * stride + col;
+        State player = cellAt(bit);
+
+        shiftScoreWindow(index, player, -1);
+        if (patternMoves > moveCount) {
+            patternMoves--;
+            updatePatterns(index, player, -1);
+        }
+        long[] bits = (player == State.X) ? bitsX : bitsO;
+        bits[bit >>> 6] &= ~(1L << bit);
+        zobristKey ^= geometry.zobrist[player == State.X ? 0 : 1][index];
+
+        movesAvailable.add(index);
+        updateFrontier(col, row, -1);
+        winner = historyWinner[moveCount];
+        gameOver = historyGameOver[moveCount];
+        setPreMove(historyPreMove[moveCount]);
+        playersTurn = player;
     }
     
 
@@ -135,24 +289,34 @@ public class Board {
             throw new IllegalStateException("TicTacToe is over. No moves can be played.");
         }
 
-        if (board[y][x] == State.Blank) {
-            board[y][x] = playersTurn;
-        } else {
+        int bit = y * stride + x;
+        if (isOccupied(bit)) {
             return false;
         }
+        long[] bits = (playersTurn == State.X) ? bitsX : bitsO;
+        bits[bit >>> 6] |= 1L << bit;
+        zobristKey ^= geometry.zobrist[playersTurn == State.X ? 0 : 1][y * width + x];
+
+        historyMove[moveCount] = y * width + x;
+        historyPreMove[moveCount] = preMoveRow * width + preMoveCol;
+        historyWinner[moveCount] = winner;
+        historyGameOver[moveCount] = gameOver;
+        preMoveRow = y;
+        preMoveCol = x;
 
         moveCount++;
-        movesAvailable.remove(y * BOARD_WIDTH + x);
+        movesAvailable.remove(y * width + x);
+        updateFrontier(x, y, 1);
 
         // The game is a draw.
-        if (moveCount == BOARD_WIDTH * BOARD_WIDTH) {
+        if (moveCount == width * width) {
             winner = State.Blank;
             gameOver = true;
         }
 
-        // Check for a winner.
-        checkWin(x, y, playersTurn);
-        updateScoreWindow(x, y, playersTurn);
+        // Count the stone in its windows, then check for a winner.
+        shiftScoreWindow(y * width + x, playersTurn, 1);
+        checkWin(y * width + x, playersTurn);
 
         playersTurn = (playersTurn == State.X) ? State.O : State.X;
         return true;
@@ -164,8 +328,8 @@ public class Board {
      * @return          true if the move has not already been played
      */
     public void setPreMove (int index) {
-        preMoveCol = index % BOARD_WIDTH;
-        preMoveRow = index / BOARD_WIDTH;
+        preMoveCol = index % width;
+        preMoveRow = index / width;
     }
     
     
@@ -177,12 +341,36 @@ public class Board {
         return gameOver;
     }
 
+    /**
+     * Get the state of a single cell.
+     * @param index     the position on the board
+     * @return          the player occupying the cell, or Blank
+     */
+    public State getCell (int index) {
+        return cellAt(geometry.bit(index));
+    }
+
     /**
      * Get a copy of the array that represents the board.
      * @return          the board array
      */
     State[][] toArray () {
-        return board.clone();
+        State[][] cells = new State[width][width];
+        for (int row = 0; row < width; row++) {
+            for (int col = 0; col < width; col++) {
+                cells[row][col] = cellAt(row * stride + col);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Get the Zobrist key of the position. The key is updated with every move,
+     * and since X always moves first it also identifies whose turn it is.
+     * @return          the 64-bit hash of the stones on the board
+     */
+    public long getZobristKey () {
+        return zobristKey;
     }
 
     /**
@@ -208,32 +396,87 @@ public class Board {
      * Get the indexes of all the positions on the board that are empty.
      * @return          the empty cells
      */
-    public HashSet<Integer> getAvailableMoves () {
+    public IntSet getAvailableMoves () {
         return movesAvailable;
     }
 
+    /**
+     * Copy the candidate moves into an array: the empty cells with a stone
+     * within FRONTIER_RADIUS rows and columns. On an empty board every cell is
+     * a candidate. Unlike copyAvailableMoves this takes time proportional to
+     * the number of candidates, not to the size of the board.
+     * @param moves     the array to fill, at least as long as the number of empty cells
+     * @return          the number of moves copied
+     */
+    public int copyCandidateMoves (int[] moves) {
+        if (moveCount == 0) {
+            return copyAvailableMoves(moves);
+        }
+        return frontier.copyTo(moves);
+    }
+
+    /**
+     * Keep the stone counts around a cell and the set of candidate moves up to
+     * date when a stone is placed on or removed from the cell.
+     * @param col       the x coordinate of the cell
+     * @param row       the y coordinate of the cell
+     * @param step      1 when the stone has been placed, -1 when it has been removed
+     */
+    private void updateFrontier (int col, int row, int step) {
+        int index = row * width + col;
+        int startRow = Math.max(0, row - FRONTIER_RADIUS);
+        int startCol = Math.max(0, col - FRONTIER_RADIUS);
+        int endRow = Math.min(row + FRONTIER_RADIUS, width - 1);
+        int endCol = Math.min(col + FRONTIER_RADIUS, width - 1);
+
+        for (int i = startRow; i <= endRow; i++) {
+            for (int j = startCol; j <= endCol; j++) {
+                int cell = i * width + j;
+                neighbours[cell] += step;
+                if (cell == index || isOccupied(i * stride + j)) {
+                    continue;
+                }
+                if (neighbours[cell] == 0) {
+                    frontier.remove(cell);
+                } else {
+                    frontier.add(cell);
+                }
+            }
+        }
+
+        if (step > 0) {
+            frontier.remove(index);
+        } else if (neighbours[index] > 0) {
+            frontier.add(index);
+        }
+    }
+
+    /**
+     * Copy the indexes of the empty cells into an array. Unlike iterating
+     * getAvailableMoves, the copy stays valid while moves are made and taken back.
+     * @param moves     the array to fill, at least as long as the number of empty cells
+     * @return          the number of moves copied
+     */
+    public int copyAvailableMoves (int[] moves) {
+        return movesAvailable.copyTo(moves);
+    }
+
     
     /**
-     * Check to see who's turn it is.
-     * @return          the player who's turn it is
+     * Get the score of X: the sum of c * c over the open windows holding c
+     * stones of X, for c below M. Kept up to date by every move.
+     * @return          the score of X
      */
     public int getScoreX () {
-    	scoreX = 0;
-    	for(int i = 0; i < M; i++){
-    		scoreX += winningWindowsX[i] * i * i;
-    	}
         return scoreX;
     }
     
     /**
-     * Check to see who's turn it is.
-     * @return          the player who's turn it is
+     * Get the score of O: the sum of c over the open windows holding c stones
+     * of O, for c below M. Kept up to date by every move.
+     * @return          the score of O
      */
     public int getScoreO () {
-    	scoreO = 0;
-    	for(int i = 0; i < M; i++){
-    		scoreO += winningWindowsO[i] * i;
-    	}
         return scoreO;
     }
     
@@ -242,7 +485,7 @@ public class Board {
      * @return          the player who's turn it is
      */
     public void printScoreO () {
-    	for(int i = 0; i < M; i++){
+    	for(int i = 0; i < m; i++){
     		System.out.print(winningWindowsO[i] + " ");
     	}
     	System.out.println();
@@ -253,7 +496,7 @@ public class Board {
      * @return          the player who's turn it is
      */
     public void printScoreX () {
-    	for(int i = 0; i < M; i++){
+    	for(int i = 0; i < m; i++){
     		System.out.print(winningWindowsX[i] + " ");
     	}
     	System.out.println();
@@ -261,242 +504,374 @@ public class Board {
     
     
     /**
-     * Check to see who's turn it is.
-     * @return          the player who's turn it is
+     * Get the number of rows and columns of the board.
+     * @return          the width
      */
     public int getBoardWidth () {
-        return BOARD_WIDTH;
+        return width;
     }
-    
+
     /**
-     * Check to see who's turn it is.
-     * @return          the player who's turn it is
+     * Get the number of stones in a row that wins the game.
+     * @return          M
+     */
+    public int getWinLength () {
+        return m;
+    }
+
+    /**
+     * Count a stone in or out of the windows through its cell, and move every
+     * window that the opponent has not blocked one step up or down the winning
+     * window counts and the score of the player. A window of the opponent that
+     * the stone is the first to block leaves the opponent's winning window
+     * counts and score, and comes back when the stone is taken back. Looks only
+     * at the windows through the cell, using the tables of Geometry.
+     * @param index     the position on the board
+     * @param player    the player who owns the stone on the cell
+     * @param step      1 when the stone has been placed, -1 when it is being removed
      */
-    public void updateScoreWindow (int col, int row, State player) {
-    	int[] scoreWindow = new int[M + 1];
-    	scoreWindow = (player == State.X) ? this.winningWindowsX : this.winningWindowsO;
+    private void shiftScoreWindow (int index, State player, int step) {
+    	int[] scoreWindow = (player == State.X) ? this.winningWindowsX : this.winningWindowsO;
+    	int[] otherWindow = (player == State.X) ? this.winningWindowsO : this.winningWindowsX;
+    	int[] own = (player == State.X) ? windowCountX : windowCountO;
+    	int[] other = (player == State.X) ? windowCountO : windowCountX;
     	State opponent = (player == State.X) ? State.O : State.X;
-    	// Update row
-    	int col_begin = Math.max(0, col - (M - 1));
+    	int scoreChange = 0;
+    	int otherScoreChange = 0;
     	
-    	for(int i = col_begin; i <= col; i++) {
-    		// winningWindow of (row, i) to (row, i + M - 1)
-    		
-    		int count = 0;   		
+    	for(int i = geometry.cellWindowStart[index]; i < geometry.cellWindowStart[index + 1]; i++) {
+    		int window = geometry.cellWindows[i];
     		
-    		for(int j = 0; j < M && count != -1; j++) {
-    			if(i + j == BOARD_WIDTH || board[row][i + j] == opponent) {
-    				count = -1;
+    		// The count of the window with the stone on the board.
+    		int count = (step > 0) ? ++own[window] : own[window]--;
+    		if(other[window] != 0) {
+    			if(count == 1) {
+    				otherWindow[other[window]] -= step;
+    				otherScoreChange -= step * windowWeight(opponent, other[window]);
     			}
-    			else if(board[row][i + j] == player) {
-    				count++;
-    			}
-    			
+    			continue;
     		}
     		
-    		
-    		if(count > 0) {
-    			scoreWindow[count - 1]--;
-    			scoreWindow[count]++;
-    		}
+    		scoreWindow[count - 1] -= step;
+    		scoreWindow[count] += step;
+    		scoreChange += step * (windowWeight(player, count) - windowWeight(player, count - 1));
     	}
     	
-    	
-    	
-    	// Update col
-    	int row_begin = Math.max(0, row - (M - 1) );
-    	
-    	for(int i = row_begin; i <= row; i++) {
-    		// winningWindow of (i, col) to (i + M - 1, col)
-    		int count = 0;
-    		for(int j = 0; j < M && count != -1; j++) {
-    			if(i + j == BOARD_WIDTH || board[i + j][col] == opponent) {
-    				count = -1;
-    			}
-    			else if(board[i + j][col] == player) {
-    				count++;
-    			}
-    		}
-    		
-    		if(count > 0) {
-    			scoreWindow[count - 1]--;
-    			scoreWindow[count]++;
-    		}
+    	if(player == State.X) {
+    		scoreX += scoreChange;
+    		scoreO += otherScoreChange;
+    	} else {
+    		scoreO += scoreChange;
+    		scoreX += otherScoreChange;
     	}
+    }
+
+    /**
+     * Write the moves played since the line keys were last brought up to date
+     * into them. Moves taken back before that was needed never reach them.
+     */
+    private void catchUpPatterns () {
+    	if(patterns == null) return;
     	
-    	
-    	// Update diagonal '\'
-    	int d1_row_end = Math.min(row + M - 1, BOARD_WIDTH - 1);
-    	int d1_col_end = Math.min(col + M - 1, BOARD_WIDTH - 1);
-    	
-    	for(int i = row, j = col; i <= d1_row_end && j <= d1_col_end; i++, j++) {
-    		int r = i - (M - 1);
-    		int c = j - (M - 1);
-    		if(r < 0 || c < 0) continue;
-    		
-    		// winningWindow of (r, c) to (i, j)
-    		int count = 0;
-    		for(; r <= i && c <= j && count != -1; r++, c++) {	
-    			if(board[r][c] == opponent) {
-    				count = -1;
-    			}
-    			else if(board[r][c] == player) {
-    				count++;
-    			}
-    		}
-    		
-    		if(count > 0) {
-    			scoreWindow[count - 1]--;
-    			scoreWindow[count]++;
-    		}
+    	for(; patternMoves < moveCount; patternMoves++) {
+    		int index = historyMove[patternMoves];
+    		updatePatterns(index, cellAt(geometry.bit(index)), 1);
     	}
+    }
+
+    /**
+     * Write a stone into or out of the line keys of the empty cells that see
+     * it, and keep the pattern scores up to date. Only empty cells count
+     * towards the pattern scores, so the cell of the stone itself leaves or
+     * rejoins them. A cell is empty here if no stone written into the keys
+     * holds it.
+     *
+     * The keys of occupied cells are left as they were when the cell was
+     * filled. Stones leave the keys in the reverse of the order they were
+     * written in, so every stone written since then has been taken out again
+     * by the time the cell is empty, and its keys are right once more.
+     * @param index     the position on the board
+     * @param player    the player who owns the stone on the cell
+     * @param step      1 when the stone is written in, -1 when it is taken out
+     */
+    private void updatePatterns (int index, State player, int step) {
+    	int cells = width * width;
+    	int col = index % width;
+    	int row = index / width;
+    	int centre = row * stride + col;
+    	int digitX = (player == State.X) ? step : 2 * step;
+    	int digitO = (player == State.X) ? 2 * step : step;
+    	int scoreChangeX = 0;
+    	int scoreChangeO = 0;
     	
-    	
-    	// Update diagonal '/'
-    	int d2_row_end = Math.max(row - (M - 1), 0);
-    	int d2_col_end = Math.min(col + M - 1, BOARD_WIDTH - 1);
-    	
-    	for(int i = row, j = col; i >= d2_row_end && j <= d1_col_end; i--, j++) {
-    		int r = i + M - 1;
-    		int c = j - (M - 1);
-    		if(r >= BOARD_WIDTH || c < 0) continue;
+    	for(int d = 0; d < STEPS.length; d++) {
+    		int dx = STEPS[d][0];
+    		int dy = STEPS[d][1];
+    		int slot = d * cells + index;
+    		scoreChangeX -= step * patterns.value(lineKeysX[slot]);
+    		scoreChangeO -= step * patterns.value(lineKeysO[slot]);
     		
-    		// winningWindow of (r, c) to (i, j)
-    		int count = 0;
-    		for(; r >= i && c <= j && count != -1; r--, c++) {	
-    			if(board[r][c] == opponent) {
-    				count = -1;
-    			}
-    			else if(board[r][c] == player) {
-    				count++;
-    			}
-    		}
+    		// The offsets along the direction that stay on the board.
+    		int first = Math.max(1 - m, -Math.min(reach(col, -dx), reach(row, -dy)));
+    		int last = Math.min(m - 1, Math.min(reach(col, dx), reach(row, dy)));
+    		int cellStep = dy * width + dx;
+    		int bitStep = dy * stride + dx;
     		
-    		if(count > 0) {
-    			scoreWindow[count - 1]--;
-    			scoreWindow[count]++;
+    		int neighbour = slot + first * cellStep;
+    		int bit = centre + first * bitStep;
+    		for(int offset = first; offset <= last; offset++, neighbour += cellStep, bit += bitStep) {
+    			if(offset == 0 || (patternBits[bit >>> 6] & (1L << bit)) != 0) continue;
+    			
+    			int power = patterns.power(-offset);
+    			int keyX = lineKeysX[neighbour];
+    			int keyO = lineKeysO[neighbour];
+    			lineKeysX[neighbour] = keyX + digitX * power;
+    			lineKeysO[neighbour] = keyO + digitO * power;
+    			scoreChangeX += patterns.value(keyX + digitX * power) - patterns.value(keyX);
+    			scoreChangeO += patterns.value(keyO + digitO * power) - patterns.value(keyO);
     		}
     	}
-    	   	
     	
-    	if(player == State.X) {
-    		this.winningWindowsX = scoreWindow;
-    	}
-    	else {
-    		this.winningWindowsO = scoreWindow;
-    	}
-   	
-        
+    	patternBits[centre >>> 6] ^= 1L << centre;
+    	patternScoreX += scoreChangeX;
+    	patternScoreO += scoreChangeO;
+    }
+
+    /**
+     * Get how many steps can be taken from a coordinate before leaving the
+     * board.
+     * @param coordinate    the row or column
+     * @param step          -1, 0 or 1
+     * @return              the furthest offset that stays on the board
+     */
+    private int reach (int coordinate, int step) {
+    	if(step == 0) return Integer.MAX_VALUE;
+    	return (step > 0) ? width - 1 - coordinate : coordinate;
+    }
+
+    /**
+     * Get the pattern score of X: the total value of the shapes X would make
+     * by playing each empty cell. Always 0 when M is larger than Patterns.MAX_M.
+     * @return          the pattern score of X
+     */
+    public int getPatternScoreX () {
+        catchUpPatterns();
+        return patternScoreX;
+    }
+
+    /**
+     * Get the pattern score of O: the total value of the shapes O would make
+     * by playing each empty cell. Always 0 when M is larger than Patterns.MAX_M.
+     * @return          the pattern score of O
+     */
+    public int getPatternScoreO () {
+        catchUpPatterns();
+        return patternScoreO;
+    }
+
+    /**
+     * Get what an open window holding a number of stones adds to the score of
+     * a player. A full window has already won and adds nothing.
+     * @param player    the player
+     * @param count     the number of stones of the player in the window
+     * @return          the weight of the window
+     */
+    private int windowWeight (State player, int count) {
+    	if(count >= m) return 0;
+    	return (player == State.X) ? count * count : count;
     }
     
     
     
     /**
-     * Check the right diagonal to see if there is a winner.
-     * @param x     the x coordinate of the most recently played move
-     * @param y     the y coordinate of the most recently played move
-     */
-    private void checkWin (int col, int row, State player) {
-    	int N = BOARD_WIDTH;
-    	// Check vertical
-    	int count_vertical = 1;
-    	int row_up = row - 1;
-    	while (row_up >= 0 && board[row_up][col] == player) {
-    		count_vertical++;
-    		row_up--;
-    	}
-    	int row_down = row + 1;
-    	while (row_down < N && board[row_down][col] == player) {
-    		count_vertical++;
-    		row_down++;
-    	}
+     * Estimate how good an empty cell is for the player to move, for ordering
+     * moves. Adds the value of the shapes the cell makes in each direction,
+     * once for the player to move (attack) and once for the opponent
+     * (defence). When M is too large for the pattern tables, counts the
+     * unblocked windows through the cell instead: a window that would hold c
+     * stones of a player after playing the cell adds c * c.
+     * @param index     the position on the board
+     * @return          the score of the cell, higher is more promising
+     */
+    public int getMoveScore (int index) {
+    	int score = 0;
     	
-    	if(count_vertical >= M ) {
-    		winner = playersTurn;
-            gameOver = true;
-            return;
+    	if(patterns != null) {
+    		catchUpPatterns();
+    		for(int slot = index; slot < lineKeysX.length; slot += width * width) {
+    			score += patterns.value(lineKeysX[slot]) + patterns.value(lineKeysO[slot]);
+    		}
+    		return score;
     	}
     	
-    	
-    	// Check horizontal
-    	int count_horizontal = 1;
-    	int col_left = col - 1;
-    	while (col_left >= 0 && board[row][col_left] == player) {
-    		count_horizontal++;
-    		col_left--;
-    	}
-    	int col_right = col + 1;
-    	while (col_right < N && board[row][col_right] == player) {
-    		count_horizontal++;
-    		col_right++;
+    	for(int i = geometry.cellWindowStart[index]; i < geometry.cellWindowStart[index + 1]; i++) {
+    		int window = geometry.cellWindows[i];
+    		int countX = windowCountX[window];
+    		int countO = windowCountO[window];
+    		if(countO == 0) {
+    			score += (countX + 1) * (countX + 1);
+    		}
+    		if(countX == 0) {
+    			score += (countO + 1) * (countO + 1);
+    		}
     	}
+    	return score;
+    }
+    
+    /**
+     * Check to see if playing an empty cell would give a player M in a row.
+     * @param index     the position on the board
+     * @param player    the player who would play the cell
+     * @return          true if the move would win the game
+     */
+    public boolean isWinningMove (int index, State player) {
+    	int[] own = (player == State.X) ? windowCountX : windowCountO;
     	
-    	if(count_horizontal >= M) {
-    		winner = playersTurn;
-            gameOver = true;
-            return;
+    	// The cell is empty, so a window with M - 1 stones is missing only this one.
+    	for(int i = geometry.cellWindowStart[index]; i < geometry.cellWindowStart[index + 1]; i++) {
+    		if(own[geometry.cellWindows[i]] == m - 1) return true;
     	}
+    	return false;
+    }
+    
+    /**
+     * Collect the empty cells of the unblocked windows through a cell that hold
+     * exactly the given number of stones of a player. These are the cells the
+     * opponent has to consider to stop the threat. With M - 1 stones every such
+     * window is a threat to win; with fewer stones a line only counts when it
+     * has at least two such windows, which tells an open shape from one that
+     * is already blocked on one side.
+     * @param index     the position on the board, normally the last move
+     * @param player    the player making the threat
+     * @param stones    the number of stones of the player in the window
+     * @param cells     filled with the distinct empty cells, at least 8 * M long
+     * @return          the number of cells found
+     */
+    public int getThreatCells (int index, State player, int stones, int[] cells) {
+    	int[] own = (player == State.X) ? windowCountX : windowCountO;
+    	int[] other = (player == State.X) ? windowCountO : windowCountX;
+    	int count = 0;
+    	int i = geometry.cellWindowStart[index];
+    	int end = geometry.cellWindowStart[index + 1];
     	
-    	// Check diagonal
-    	int count_diagonal_left = 1;
-    	int row_left_up = row - 1, col_left_up = col - 1;
-    	while (row_left_up >= 0 && col_left_up >= 0 && board[row_left_up][col_left_up] == player) {
-    		count_diagonal_left++;
-    		row_left_up--;
-    		col_left_up--;
-    	}
-    	int row_right_down = row + 1, col_right_down = col + 1;
-    	while (row_right_down < N && col_right_down < N && board[row_right_down][col_right_down] == player) {
-    		count_diagonal_left++;
-    		row_right_down++;
-    		col_right_down++;
-    	}
-
-    	int count_diagonal_right = 1;
-    	int row_left_down = row + 1, col_left_down = col - 1;
-    	while (row_left_down < N && col_left_down >= 0 && board[row_left_down][col_left_down] == player) {
-    		count_diagonal_right++;
-    		row_left_down++;
-    		col_left_down--;
-    	}
-    	int row_right_up = row - 1, col_right_up = col + 1;
-    	while (row_right_up >= 0 && col_right_up < N && board[row_right_up][col_right_up] == player) {
-    		count_diagonal_right++;
-    		row_right_up--;
-    		col_right_up++;
+    	// The windows of a cell are in order, so those of a direction are together.
+    	for(int d = 0; d < 4; d++) {
+    		int first = i;
+    		int windows = 0;
+    		for(; i < end && geometry.cellWindows[i] < geometry.directionStart[d + 1]; i++) {
+    			int window = geometry.cellWindows[i];
+    			if(own[window] == stones && other[window] == 0) windows++;
+    		}
+    		
+    		if(windows == 0 || (stones < m - 1 && windows < 2)) continue;
+    		
+    		for(int k = first; k < i; k++) {
+    			int window = geometry.cellWindows[k];
+    			if(own[window] != stones || other[window] != 0) continue;
+    			
+    			for(int c = window * m; c < window * m + m; c++) {
+    				int cell = geometry.windowCells[c];
+    				if(isOccupied(geometry.bit(cell))) continue;
+    				
+    				boolean seen = false;
+    				for(int j = 0; j < count && !seen; j++) {
+    					seen = cells[j] == cell;
+    				}
+    				if(!seen) cells[count++] = cell;
+    			}
+    		}
     	}
+    	return count;
+    }
+    
+    /**
+     * Get the number of winning windows of a player holding a number of stones
+     * that the opponent has not blocked. A window with M - 1 stones is missing
+     * one cell, so a player with one has a winning move.
+     * @param player    the player
+     * @param stones    the number of stones, from 0 to M
+     * @return          the number of windows
+     */
+    public int getWinningWindows (State player, int stones) {
+    	return (player == State.X) ? winningWindowsX[stones] : winningWindowsO[stones];
+    }
+    
+    /**
+     * Check the windows through the most recent move to see if there is a winner.
+     * @param index     the position of the most recently played move
+     * @param player    the player who played the move
+     */
+    private void checkWin (int index, State player) {
+    	int[] own = (player == State.X) ? windowCountX : windowCountO;
     	
-    	if(count_diagonal_left >= M || count_diagonal_right >= M) {
-    		winner = playersTurn;
-            gameOver = true;
-            return;
+    	for(int i = geometry.cellWindowStart[index]; i < geometry.cellWindowStart[index + 1]; i++) {
+    		if(own[geometry.cellWindows[i]] == m) {
+    			winner = player;
+    			gameOver = true;
+    			return;
+    		}
     	}
     }
 
+    /**
+     * Check to see if a cell holds a stone of either player.
+     * @param bit       the bit index of the cell
+     * @return          true if the cell is not blank
+     */
+    private boolean isOccupied (int bit) {
+    	return ((bitsX[bit >>> 6] | bitsO[bit >>> 6]) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Get the state of a single cell.
+     * @param bit       the bit index of the cell
+     * @return          the player occupying the cell, or Blank
+     */
+    private State cellAt (int bit) {
+    	if((bitsX[bit >>> 6] & (1L << bit)) != 0) return State.X;
+    	if((bitsO[bit >>> 6] & (1L << bit)) != 0) return State.O;
+    	return State.Blank;
+    }
+
     /**
      * Get a deep copy of the Tic Tac Toe board.
      * @return      an identical copy of the board
      */
     public Board getDeepCopy () {
-        Board board             = new Board();
+        Board board             = new Board(width, m);
 
-        for (int i = 0; i < board.board.length; i++) {
-            board.board[i] = this.board[i].clone();
-        }
+        board.bitsX             = this.bitsX.clone();
+        board.bitsO             = this.bitsO.clone();
         
-        for(int i = 0; i < M + 1; i++) {
+        for(int i = 0; i < m + 1; i++) {
         	board.winningWindowsX[i] = this.winningWindowsX[i];
         	board.winningWindowsO[i] = this.winningWindowsO[i];
         }
 
+        board.windowCountX      = this.windowCountX.clone();
+        board.windowCountO      = this.windowCountO.clone();
+        board.scoreX            = this.scoreX;
+        board.scoreO            = this.scoreO;
+        board.lineKeysX         = this.lineKeysX.clone();
+        board.lineKeysO         = this.lineKeysO.clone();
+        board.patternScoreX     = this.patternScoreX;
+        board.patternScoreO     = this.patternScoreO;
+        board.patternBits       = this.patternBits.clone();
+        board.patternMoves      = this.patternMoves;
         board.playersTurn       = this.playersTurn;
         board.winner            = this.winner;
-        board.movesAvailable    = new HashSet<>();
-        board.movesAvailable.addAll(this.movesAvailable);
+        board.movesAvailable    = this.movesAvailable.copy();
+        board.frontier          = this.frontier.copy();
+        board.neighbours        = this.neighbours.clone();
         board.moveCount         = this.moveCount;
         board.gameOver          = this.gameOver;
+        board.zobristKey        = this.zobristKey;
         board.preMoveRow        = this.preMoveRow;
         board.preMoveCol        = this.preMoveCol;
+        board.historyMove       = this.historyMove.clone();
+        board.historyPreMove    = this.historyPreMove.clone();
+        board.historyWinner     = this.historyWinner.clone();
+        board.historyGameOver   = this.historyGameOver.clone();
         
         
         return board;
@@ -506,28 +881,29 @@ public class Board {
     public String toString () {
         StringBuilder sb = new StringBuilder();
 
-        for (int y = 0; y < BOARD_WIDTH; y++) {
+        for (int y = 0; y < width; y++) {
         	if(y == 0) {
         		sb.append("  ");
-        		for(int i = 0; i < BOARD_WIDTH; i++) {
+        		for(int i = 0; i < width; i++) {
         			sb.append(i < 10 ? " " + i : i);
         		}
         		sb.append("\n");
         	}
-            for (int x = 0; x < BOARD_WIDTH; x++) {
+            for (int x = 0; x < width; x++) {
             	if(x == 0) {
             		sb.append(y < 10 ? " " + y : y);
             		sb.append(" ");
             	}
-                if (board[y][x] == State.Blank) {
+                State cell = cellAt(y * stride + x);
+                if (cell == State.Blank) {
                     sb.append("-");
                 } else {
-                    sb.append(board[y][x].name());
+                    sb.append(cell.name());
                 }
                 sb.append(" ");
 
             }
-            if (y != BOARD_WIDTH -1) {
+            if (y != width -1) {
                 sb.append("\n");
             }
         }
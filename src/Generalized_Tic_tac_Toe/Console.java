@@ -1,7 +1,14 @@
 package Generalized_Tic_tac_Toe;
 import Generalized_Tic_tac_Toe.Algorithms;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * For playing Tic Tac Toe in the console.
@@ -10,12 +17,24 @@ public class Console {
 
     private Board board;
     private Scanner sc = new Scanner(System.in);
+    private ExecutorService ponderThread;
+    private Ponder pondering;
 
     /**
      * Construct Console.
+     * @param width     the number of rows and columns of the board
+     * @param m         the number of stones in a row that wins
+     * @param ponder    whether the AI searches while the player thinks
      */
-    private Console() {
-        board = new Board();
+    private Console(int width, int m, boolean ponder) {
+        board = new Board(width, m);
+        if (ponder) {
+            ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Console ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
     }
 
     /**
@@ -30,6 +49,7 @@ public class Console {
             playMove();
 
             if (board.isGameOver()) {
+                stopPondering();
                 printWinner();
 
                 if (!tryAgain()) {
@@ -45,8 +65,19 @@ public class Console {
     private void playMove () {
     	
         if (board.getTurn() == Board.State.X) {
-        	Algorithms.alphaBetaAdvanced(Board.State.X, board);
-            
+            SearchStats pondered = stopPondering();
+            if (pondered != null) {
+                int move = pondered.getMove();
+                System.out.println("Player X moves at (" + move / board.getBoardWidth() + "," + move % board.getBoardWidth()
+                        + "), score = " + pondered.getScore() + ", from pondering: " + pondered);
+                board.move(move);
+            } else {
+                Algorithms.alphaBetaAdvanced(Board.State.X, board);
+            }
+
+            if (ponderThread != null && !board.isGameOver()) {
+                pondering = Ponder.start(board, AlphaBetaAdvanced.getDefaultPly(), null, ponderThread);
+            }
         } else {
         	
         	getPlayerMove();
@@ -55,6 +86,19 @@ public class Console {
     	//Algorithms.alphaBetaAdvanced(board.getTurn(), board);
     }
 
+    /**
+     * Stop searching on the player's time.
+     * @return      the search of the position the player's move led to, or null if it was not pondered
+     */
+    private SearchStats stopPondering () {
+        if (pondering == null) {
+            return null;
+        }
+        SearchStats pondered = pondering.stop(board);
+        pondering = null;
+        return pondered;
+    }
+
     /**
      * Print out the board and the player who's turn it is.
      */
@@ -71,13 +115,14 @@ public class Console {
 
         int move_row = sc.nextInt();
         int move_col = sc.nextInt();
-        int move = move_row * Board.BOARD_WIDTH + move_col;
+        int width = board.getBoardWidth();
+        int move = move_row * width + move_col;
         
 
-        if (move < 0 || move >= Board.BOARD_WIDTH* Board.BOARD_WIDTH) {
+        if (move_row < 0 || move_row >= width || move_col < 0 || move_col >= width) {
             System.out.println("\nInvalid move.");
-            System.out.println("\nThe index of the move must be between 0 and "
-                    + (Board.BOARD_WIDTH * Board.BOARD_WIDTH - 1) + ", inclusive.");
+            System.out.println("\nThe row and column of the move must be between 0 and "
+                    + (width - 1) + ", inclusive.");
         } else if (!board.move(move)) {
             System.out.println("\nInvalid move.");
             System.out.println("\nThe selected index must be blank.");
@@ -131,8 +176,32 @@ public class Console {
         }
     }
 
-    public static void main(String[] args) {
-        Console ticTacToe = new Console();
+    /**
+     * Play in the console. The board width and M can be given as arguments,
+     * for example "15 5"; the default is a 15x15 board with 5 in a row. A
+     * third argument names an opening book file built by OpeningBook. With
+     * --ponder, anywhere among the arguments, the AI keeps searching the
+     * likely replies while the player thinks, and with --threads N it
+     * searches each move on N threads.
+     * @param args      the board width, M, the opening book, --ponder and --threads
+     * @throws IOException  if the opening book cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        boolean ponder = rest.remove("--ponder");
+        int threads = rest.indexOf("--threads");
+        if (threads != -1 && threads + 1 < rest.size()) {
+            AlphaBetaAdvanced.setThreadCount(Integer.parseInt(rest.remove(threads + 1)));
+            rest.remove(threads);
+        }
+        args = rest.toArray(new String[0]);
+
+        int width = args.length >= 2 ? Integer.parseInt(args[0]) : Board.BOARD_WIDTH;
+        int m = args.length >= 2 ? Integer.parseInt(args[1]) : Board.M;
+        if (args.length >= 3) {
+            AlphaBetaAdvanced.setOpeningBook(OpeningBook.open(Paths.get(args[2])));
+        }
+        Console ticTacToe = new Console(width, m, ponder);
         ticTacToe.play();
     }
 
@@ -0,0 +1,586 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many games at once over HTTP, each with its own board, a human player
+ * on the client side and an engine on the server side.
+ *
+ * Requests never wait for the engine. A move by the human is played at once
+ * and the reply of the engine is handed to a fixed pool of worker threads with
+ * a bounded queue; the client polls the game until the engine has moved. So a
+ * long search only ever holds a worker, never one of the threads answering
+ * requests, and when every worker is busy and the queue is full the move is
+ * refused with 503 instead of queueing without limit. Each game has its own
+ * time budget per engine move, capped by the server, and the engine searches
+ * a copy of the board so that the game can be read while it thinks.
+ *
+ * A game started with ponder=true has the advanced engine search the likely
+ * replies while the human thinks, on low priority threads of its own that
+ * never hold up a worker. A human move that was searched to the end is
+ * answered at once, within the same request.
+ *
+ * The API, all answers being the game as JSON:
+ *   POST   /games?width=15&m=5&human=X&engine=advanced&budget=200   start a game
+ *   GET    /games/{id}                                              read a game
+ *   POST   /games/{id}/moves?cell=112                               play a move
+ *   DELETE /games/{id}                                              end a game
+ *   GET    /stats                                                   server counters
+ * Games that are not touched for the idle timeout are removed.
+ */
+public class GameServer {
+
+    // The widest board a game or a batch position may have.
+    static final int MAX_WIDTH = 64;
+
+    /**
+     * One game: the board, who plays what, and whether the engine is thinking.
+     * Every field is guarded by the session itself.
+     */
+    private static final class Session {
+
+        final long id;
+        final Board board;
+        final Board.State human;
+        final String engine;
+        final Duration budget;
+        final boolean ponder;
+        boolean thinking;
+        boolean closed;
+        int lastMove = -1;
+        long lastActive = System.nanoTime();
+        Ponder pondering;
+
+        /**
+         * Construct Session.
+         * @param id        the number of the game
+         * @param board     the board
+         * @param human     the side the client plays
+         * @param engine    random, advanced or solved
+         * @param budget    the time the engine may spend on each move
+         * @param ponder    whether the engine searches on the human's time
+         */
+        Session (long id, Board board, Board.State human, String engine, Duration budget, boolean ponder) {
+            this.id = id;
+            this.board = board;
+            this.human = human;
+            this.engine = engine;
+            this.budget = budget;
+            this.ponder = ponder;
+        }
+
+        /**
+         * Describe the game as JSON.
+         * @return          the game
+         */
+        synchronized String toJson () {
+            int width = board.getBoardWidth();
+            StringBuilder cells = new StringBuilder(width * width);
+            for (int i = 0; i < width * width; i++) {
+                Board.State cell = board.getCell(i);
+                cells.append(cell == Board.State.Blank ? '-' : cell.name().charAt(0));
+            }
+
+            String status = !board.isGameOver() ? "playing"
+                    : board.getWinner() == Board.State.Blank ? "draw" : board.getWinner().name() + " won";
+            return "{\"id\":" + id + ",\"width\":" + width + ",\"m\":" + board.getWinLength()
+                    + ",\"human\":\"" + human.name() + "\",\"engine\":\"" + engine + "\",\"budget\":" + budget.toMillis()
+                    + ",\"ponder\":" + ponder + ",\"turn\":\"" + board.getTurn().name() + "\",\"status\":\"" + status + "\",\"thinking\":" + thinking
+                    + ",\"lastMove\":" + lastMove + ",\"cells\":\"" + cells + "\"}";
+        }
+
+    }
+
+    /**
+     * A failed request, answered with its HTTP status and message.
+     */
+    private static final class RequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        /**
+         * Construct RequestException.
+         * @param status    the HTTP status
+         * @param message   why the request failed
+         */
+        RequestException (int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+    }
+
+    static {
+        // The JDK server writes the headers and the body of an answer apart;
+        // with Nagle's algorithm on, every answer on a kept-alive connection
+        // then waits about 40 ms for the delayed ACK of the client.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService requestThreads;
+    private final ThreadPoolExecutor engineThreads;
+    private final ThreadPoolExecutor ponderThreads;
+    private final ScheduledExecutorService sweeper;
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong engineMoves = new AtomicLong();
+    private final AtomicLong rejectedMoves = new AtomicLong();
+    private final AtomicLong ponderHits = new AtomicLong();
+    private final int maxSessions;
+    private final Duration maxBudget;
+    private final Duration idleTimeout;
+
+    /**
+     * Construct GameServer. It does not accept requests until start.
+     * @param port          the port to listen on, 0 for any free port
+     * @param workers       the number of engine moves searched at once
+     * @param queueSize     the number of engine moves that may wait for a worker
+     * @param maxSessions   the number of games that may be open at once
+     * @param maxBudget     the most time an engine may spend on a move
+     * @param idleTimeout   how long an untouched game is kept
+     * @throws IOException  if the port cannot be opened
+     */
+    GameServer (int port, int workers, int queueSize, int maxSessions, Duration maxBudget, Duration idleTimeout) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        requestThreads = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), daemon("GameServer request"));
+        engineThreads = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemon("GameServer engine"));
+        // Pondering only runs on a thread that is free at once, and yields the CPU to the engine moves.
+        ThreadFactory ponderFactory = daemon("GameServer ponder");
+        ponderThreads = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = ponderFactory.newThread(runnable);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        sweeper = Executors.newSingleThreadScheduledExecutor(daemon("GameServer sweeper"));
+        this.maxSessions = maxSessions;
+        this.maxBudget = maxBudget;
+        this.idleTimeout = idleTimeout;
+
+        server.setExecutor(requestThreads);
+        server.createContext("/games", this::handleGames);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Make a factory of daemon threads.
+     * @param name          the name of the threads
+     * @return              the factory
+     */
+    private static ThreadFactory daemon (String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Start accepting requests and removing idle games.
+     */
+    void start () {
+        long period = Math.max(1, idleTimeout.toMillis() / 4);
+        sweeper.scheduleAtFixedRate(this::removeIdleSessions, period, period, TimeUnit.MILLISECONDS);
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests and let go of every game.
+     */
+    void stop () {
+        server.stop(0);
+        sweeper.shutdownNow();
+        engineThreads.shutdownNow();
+        ponderThreads.shutdownNow();
+        requestThreads.shutdownNow();
+        sessions.clear();
+    }
+
+    /**
+     * Get the port the server listens on.
+     * @return              the port
+     */
+    int getPort () {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answer a request under /games.
+     * @param exchange      the request
+     * @throws IOException  if the answer cannot be sent
+     */
+    private void handleGames (HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if (path.length == 2 && method.equals("POST")) {
+                respond(exchange, 201, create(query).toJson());
+                return;
+            }
+            if (path.length < 3) {
+                throw new RequestException(404, "Not found.");
+            }
+
+            Session session = sessions.get(parseLong(path[2], "game id"));
+            if (session == null) {
+                throw new RequestException(404, "No game " + path[2] + ".");
+            }
+
+            if (path.length == 3 && method.equals("GET")) {
+                touch(session);
+                respond(exchange, 200, session.toJson());
+            } else if (path.length == 3 && method.equals("DELETE")) {
+                close(session);
+                respond(exchange, 204, null);
+            } else if (path.length == 4 && path[3].equals("moves") && method.equals("POST")) {
+                play(session, (int) parseLong(query.get("cell"), "cell"));
+                respond(exchange, 200, session.toJson());
+            } else {
+                throw new RequestException(405, "Method not allowed.");
+            }
+        } catch (RequestException e) {
+            respond(exchange, e.status, "{\"error\":\"" + e.getMessage() + "\"}");
+        } catch (RuntimeException e) {
+            respond(exchange, 500, "{\"error\":\"Internal error.\"}");
+        }
+    }
+
+    /**
+     * Answer a request for the server counters.
+     * @param exchange      the request
+     * @throws IOException  if the answer cannot be sent
+     */
+    private void handleStats (HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "{\"sessions\":" + sessions.size() + ",\"workers\":" + engineThreads.getMaximumPoolSize()
+                + ",\"searching\":" + engineThreads.getActiveCount() + ",\"queued\":" + engineThreads.getQueue().size()
+                + ",\"engineMoves\":" + engineMoves.get() + ",\"rejectedMoves\":" + rejectedMoves.get()
+                + ",\"pondering\":" + ponderThreads.getActiveCount() + ",\"ponderHits\":" + ponderHits.get() + "}");
+    }
+
+    /**
+     * Start a game. If the engine plays X, it starts thinking at once.
+     * @param query             the parameters of the game
+     * @return                  the game
+     * @throws RequestException if a parameter is wrong or the server is full
+     */
+    private Session create (Map<String, String> query) throws RequestException {
+        int width = (int) parseLong(query.getOrDefault("width", String.valueOf(Board.BOARD_WIDTH)), "width");
+        int m = (int) parseLong(query.getOrDefault("m", String.valueOf(Board.M)), "m");
+        String side = query.getOrDefault("human", "X");
+        String engine = query.getOrDefault("engine", "advanced");
+        long budgetMillis = parseLong(query.getOrDefault("budget", String.valueOf(maxBudget.toMillis())), "budget");
+        String ponder = query.getOrDefault("ponder", "false");
+
+        if (width < 1 || width > MAX_WIDTH || m < 1 || m > width) {
+            throw new RequestException(400, "The width must be between 1 and " + MAX_WIDTH + " and M between 1 and the width.");
+        }
+        if (!side.equals("X") && !side.equals("O")) {
+            throw new RequestException(400, "The human must play X or O.");
+        }
+        if (!engine.equals("advanced") && !engine.equals("random") && !engine.equals("solved")) {
+            throw new RequestException(400, "The engine must be advanced, random or solved.");
+        }
+        if (engine.equals("solved") && width * width > PositionDatabase.MAX_CELLS) {
+            throw new RequestException(400, "Only boards of up to " + PositionDatabase.MAX_CELLS + " cells can be solved.");
+        }
+        if (!ponder.equals("true") && !ponder.equals("false")) {
+            throw new RequestException(400, "Ponder must be true or false.");
+        }
+        if (ponder.equals("true") && !engine.equals("advanced")) {
+            throw new RequestException(400, "Only the advanced engine can ponder.");
+        }
+        if (budgetMillis < 1) {
+            throw new RequestException(400, "The budget must be at least 1 ms.");
+        }
+        if (sessions.size() >= maxSessions) {
+            throw new RequestException(503, "Too many games.");
+        }
+
+        Duration budget = Duration.ofMillis(Math.min(budgetMillis, maxBudget.toMillis()));
+        Session session = new Session(nextId.getAndIncrement(), new Board(width, m), Board.State.valueOf(side), engine, budget,
+                ponder.equals("true"));
+        sessions.put(session.id, session);
+
+        synchronized (session) {
+            if (session.human == Board.State.O && !submit(session)) {
+                sessions.remove(session.id);
+                throw new RequestException(503, "Every engine is busy.");
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Play the move of the human and let the engine answer: at once if the
+     * engine pondered the move, else on a worker.
+     * @param session           the game
+     * @param cell              the cell to play
+     * @throws RequestException if it is not the human's turn or the cell is taken
+     */
+    private void play (Session session, int cell) throws RequestException {
+        synchronized (session) {
+            session.lastActive = System.nanoTime();
+            Board board = session.board;
+            if (board.isGameOver()) {
+                throw new RequestException(409, "The game is over.");
+            }
+            if (session.thinking || board.getTurn() != session.human) {
+                throw new RequestException(409, "It is not your turn.");
+            }
+            if (cell < 0 || cell >= board.getBoardWidth() * board.getBoardWidth() || !board.move(cell)) {
+                throw new RequestException(409, "The cell is taken or off the board.");
+            }
+            session.lastMove = cell;
+
+            if (session.pondering != null) {
+                SearchStats pondered = session.pondering.stop(board);
+                session.pondering = null;
+                if (pondered != null && !board.isGameOver()) {
+                    ponderHits.incrementAndGet();
+                    reply(session, pondered.getMove());
+                    return;
+                }
+            }
+            if (!board.isGameOver() && !submit(session)) {
+                board.unmakeMove();
+                session.lastMove = -1;
+                throw new RequestException(503, "Every engine is busy.");
+            }
+        }
+    }
+
+    /**
+     * Hand the reply of the engine to a worker. Called with the session held.
+     * @param session       the game
+     * @return              false if every worker is busy and the queue is full
+     */
+    private boolean submit (Session session) {
+        Board copy = session.board.getDeepCopy();
+        try {
+            engineThreads.execute(() -> think(session, copy));
+        } catch (RejectedExecutionException e) {
+            rejectedMoves.incrementAndGet();
+            return false;
+        }
+        session.thinking = true;
+        return true;
+    }
+
+    /**
+     * Search the reply of the engine on a copy of the board, then play it.
+     * @param session       the game
+     * @param copy          a copy of the board, owned by this worker
+     */
+    private void think (Session session, Board copy) {
+        int move = -1;
+        try {
+            synchronized (session) {
+                if (session.closed) {
+                    return;
+                }
+            }
+            move = chooseMove(session.engine, copy, session.budget);
+        } finally {
+            synchronized (session) {
+                if (!session.closed && move != -1) {
+                    reply(session, move);
+                }
+                session.thinking = false;
+            }
+        }
+    }
+
+    /**
+     * Play the move of the engine and, if the game asks for it, start
+     * pondering the human's answer. Called with the session held.
+     * @param session       the game
+     * @param move          the move of the engine
+     */
+    private void reply (Session session, int move) {
+        Board board = session.board;
+        board.move(move);
+        session.lastMove = move;
+        engineMoves.incrementAndGet();
+
+        if (session.ponder && !board.isGameOver()) {
+            try {
+                session.pondering = Ponder.start(board, Integer.MAX_VALUE, session.budget, ponderThreads);
+            } catch (RejectedExecutionException e) {
+                // Every ponder thread is busy: the human's move is searched as usual.
+            }
+        }
+    }
+
+    /**
+     * Choose the move of an engine without playing it.
+     * @param engine        random, advanced or solved
+     * @param board         the board, owned by the caller
+     * @param budget        the time the engine may spend
+     * @return              the move
+     */
+    private static int chooseMove (String engine, Board board, Duration budget) {
+        switch (engine) {
+            case "random":
+                IntSet moves = board.getAvailableMoves();
+                return moves.get(java.util.concurrent.ThreadLocalRandom.current().nextInt(moves.size()));
+            case "solved":
+                return PositionDatabase.of(board.getBoardWidth(), board.getWinLength()).bestMove(board);
+            default:
+                return AlphaBetaAdvanced.chooseMove(board, budget);
+        }
+    }
+
+    /**
+     * Mark a game as used, so that it is not removed as idle.
+     * @param session       the game
+     */
+    private static void touch (Session session) {
+        synchronized (session) {
+            session.lastActive = System.nanoTime();
+        }
+    }
+
+    /**
+     * End a game. An engine still thinking about it throws its move away.
+     * @param session       the game
+     */
+    private void close (Session session) {
+        synchronized (session) {
+            session.closed = true;
+            if (session.pondering != null) {
+                session.pondering.cancel();
+                session.pondering = null;
+            }
+        }
+        sessions.remove(session.id);
+    }
+
+    /**
+     * Remove the games nobody has touched for the idle timeout.
+     */
+    private void removeIdleSessions () {
+        long now = System.nanoTime();
+        for (Session session : sessions.values()) {
+            boolean idle;
+            synchronized (session) {
+                idle = !session.thinking && now - session.lastActive > idleTimeout.toNanos();
+            }
+            if (idle) {
+                close(session);
+            }
+        }
+    }
+
+    /**
+     * Send an answer and close the exchange.
+     * @param exchange      the request
+     * @param status        the HTTP status
+     * @param json          the body, or null for none
+     * @throws IOException  if the answer cannot be sent
+     */
+    private static void respond (HttpExchange exchange, int status, String json) throws IOException {
+        try {
+            if (json == null) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Split a query string such as "cell=4&width=3" into its parameters.
+     * @param query         the raw query, or null
+     * @return              the parameters by name
+     */
+    private static Map<String, String> parseQuery (String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(pair.substring(0, equals), pair.substring(equals + 1));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Read a number from a request.
+     * @param text              the text of the number, or null
+     * @param name              what the number is, for the error message
+     * @return                  the number
+     * @throws RequestException if the text is not a number
+     */
+    private static long parseLong (String text, String name) throws RequestException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "The " + name + " must be a number.");
+        }
+    }
+
+    /**
+     * Run the server from the command line, for example "8080 4 1000 10000 500"
+     * for port 8080, 4 engine workers, up to 1000 waiting engine moves, up to
+     * 10000 games and at most 500 ms per engine move. An optional sixth
+     * argument is the number of threads each advanced engine move searches
+     * on, 1 by default; the helper threads are shared by all the workers.
+     * @param args          port, workers, queue size, maximum games, maximum ms per move and search threads
+     * @throws IOException  if the port cannot be opened
+     */
+    public static void main (String[] args) throws IOException {
+        if (args.length != 5 && args.length != 6) {
+            System.out.println("Usage: GameServer port workers queueSize maxSessions maxMillisPerMove [searchThreads]");
+            return;
+        }
+
+        AlphaBetaAdvanced.setVerbose(false);
+        if (args.length == 6) {
+            AlphaBetaAdvanced.setThreadCount(Integer.parseInt(args[5]));
+        }
+        GameServer gameServer = new GameServer(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), Duration.ofMillis(Long.parseLong(args[4])), Duration.ofMinutes(10));
+        gameServer.start();
+        System.out.println("Serving games on port " + gameServer.getPort() + ".");
+    }
+
+}
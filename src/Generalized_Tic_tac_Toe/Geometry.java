@@ -0,0 +1,129 @@
+package Generalized_Tic_tac_Toe;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tables that depend only on the shape of a board: its width and the
+ * number of stones in a row that wins.
+ *
+ * Building the tables takes time proportional to the board, so each shape is
+ * built once and shared by every board of that shape, from any thread. The
+ * tables are never changed after construction.
+ */
+final class Geometry {
+
+    private static final ConcurrentHashMap<Long, Geometry> SHAPES = new ConcurrentHashMap<>();
+
+    final int width;
+    final int m;
+    final int cells;
+
+    // Bit layout of the packed bitsets. Each row has one extra sentinel bit
+    // that is never set, so lines stop at the edge of the board.
+    final int stride;
+    final int bitCount;
+    final int wordCount;
+
+    // The winning windows: every run of M cells in a line. The windows through
+    // cell i are cellWindows[cellWindowStart[i]] to cellWindows[cellWindowStart[i + 1] - 1],
+    // in increasing order. Window w holds the cells windowCells[w * M] to
+    // windowCells[w * M + M - 1], and the windows of direction d are numbered
+    // from directionStart[d] to directionStart[d + 1] - 1.
+    final int windowCount;
+    final int[] cellWindowStart;
+    final int[] cellWindows;
+    final int[] windowCells;
+    final int[] directionStart;
+
+    // Zobrist keys, one random number per player and cell, and the key of the
+    // empty board. The seed is fixed so keys are the same from one run to the
+    // next, and mixes in the shape so boards of different shapes sharing a
+    // transposition table do not share keys.
+    final long[][] zobrist;
+    final long emptyKey;
+
+    /**
+     * Get the tables for a shape of board.
+     * @param width     the number of rows and columns
+     * @param m         the number of stones in a row that wins
+     * @return          the shared tables
+     */
+    static Geometry of (int width, int m) {
+        if (width < 1 || m < 1 || m > width) {
+            throw new IllegalArgumentException("Board width must be at least 1 and M between 1 and the width.");
+        }
+        return SHAPES.computeIfAbsent((long) width << 32 | m, key -> new Geometry(width, m));
+    }
+
+    /**
+     * Geometry can only be instantiated by of.
+     * @param width     the number of rows and columns
+     * @param m         the number of stones in a row that wins
+     */
+    private Geometry (int width, int m) {
+        this.width = width;
+        this.m = m;
+        cells = width * width;
+        stride = width + 1;
+        bitCount = width * stride;
+        wordCount = (bitCount + 63) >>> 6;
+        zobrist = new long[2][cells];
+
+        java.util.Random random = new java.util.Random(0x5EED ^ ((long) width << 32 | m) * 0x9E3779B97F4A7C15L);
+        emptyKey = random.nextLong();
+        for (int i = 0; i < cells; i++) {
+            zobrist[0][i] = random.nextLong();
+            zobrist[1][i] = random.nextLong();
+        }
+
+        // Number the windows by direction and first cell, then list the
+        // windows of every cell, first counting them and then filling them in.
+        int[][] steps = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}};
+        int[] windowCells = new int[4 * cells * m];
+        int windows = 0;
+        directionStart = new int[steps.length + 1];
+        for (int d = 0; d < steps.length; d++) {
+            int[] step = steps[d];
+            directionStart[d] = windows;
+            for (int row = 0; row < width; row++) {
+                for (int col = 0; col < width; col++) {
+                    int endCol = col + (m - 1) * step[0];
+                    int endRow = row + (m - 1) * step[1];
+                    if (endCol < 0 || endCol >= width || endRow >= width) continue;
+
+                    for (int k = 0; k < m; k++) {
+                        windowCells[windows * m + k] = (row + k * step[1]) * width + col + k * step[0];
+                    }
+                    windows++;
+                }
+            }
+        }
+        directionStart[steps.length] = windows;
+
+        windowCount = windows;
+        this.windowCells = java.util.Arrays.copyOf(windowCells, windows * m);
+        cellWindowStart = new int[cells + 1];
+        cellWindows = new int[windows * m];
+        for (int i = 0; i < windows * m; i++) {
+            cellWindowStart[windowCells[i] + 1]++;
+        }
+        for (int i = 0; i < cells; i++) {
+            cellWindowStart[i + 1] += cellWindowStart[i];
+        }
+        int[] filled = new int[cells];
+        for (int i = 0; i < windows * m; i++) {
+            int cell = windowCells[i];
+            cellWindows[cellWindowStart[cell] + filled[cell]++] = i / m;
+        }
+    }
+
+    /**
+     * Convert a cell index to the bit index of the packed bitsets.
+     * @param index     the position on the board
+     * @return          the bit index
+     */
+    int bit (int index) {
+        return (index / width) * stride + index % width;
+    }
+
+}
@@ -0,0 +1,116 @@
+package Generalized_Tic_tac_Toe;
+
+/**
+ * A set of small non-negative ints with O(1) add, remove and lookup.
+ *
+ * The elements are kept packed at the front of an array, and a second array
+ * maps each possible value to its position in the first. Removing an element
+ * moves the last element into its place, so the order of the elements changes
+ * but no memory is allocated after construction.
+ */
+public class IntSet {
+
+    private final int[] elements;
+    private final int[] positions;
+    private int size;
+
+    /**
+     * Construct an empty set.
+     * @param capacity  the values the set can hold are 0 to capacity - 1
+     */
+    public IntSet (int capacity) {
+        elements = new int[capacity];
+        positions = new int[capacity];
+        java.util.Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Add a value to the set.
+     * @param value     the value
+     * @return          true if the value was not in the set yet
+     */
+    public boolean add (int value) {
+        if (positions[value] != -1) {
+            return false;
+        }
+        positions[value] = size;
+        elements[size++] = value;
+        return true;
+    }
+
+    /**
+     * Remove a value from the set.
+     * @param value     the value
+     * @return          true if the value was in the set
+     */
+    public boolean remove (int value) {
+        int position = positions[value];
+        if (position == -1) {
+            return false;
+        }
+        int last = elements[--size];
+        elements[position] = last;
+        positions[last] = position;
+        positions[value] = -1;
+        return true;
+    }
+
+    /**
+     * Check whether a value is in the set.
+     * @param value     the value
+     * @return          true if the value is in the set
+     */
+    public boolean contains (int value) {
+        return positions[value] != -1;
+    }
+
+    /**
+     * Get the number of values in the set.
+     * @return          the size of the set
+     */
+    public int size () {
+        return size;
+    }
+
+    /**
+     * Get a value by its position in the set.
+     * @param i         the position, from 0 to size - 1
+     * @return          the value at that position
+     */
+    public int get (int i) {
+        return elements[i];
+    }
+
+    /**
+     * Copy the values into an array.
+     * @param values    the array to fill, at least size long
+     * @return          the number of values copied
+     */
+    public int copyTo (int[] values) {
+        System.arraycopy(elements, 0, values, 0, size);
+        return size;
+    }
+
+    /**
+     * Remove every value from the set.
+     */
+    public void clear () {
+        for (int i = 0; i < size; i++) {
+            positions[elements[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Get a copy of the set.
+     * @return          a set with the same values in the same order
+     */
+    public IntSet copy () {
+        IntSet copy = new IntSet(elements.length);
+        System.arraycopy(elements, 0, copy.elements, 0, elements.length);
+        System.arraycopy(positions, 0, copy.positions, 0, positions.length);
+        copy.size = size;
+        return copy;
+    }
+
+}
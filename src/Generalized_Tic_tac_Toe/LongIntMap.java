@@ -0,0 +1,198 @@
+package Generalized_Tic_tac_Toe;
+
+/**
+ * A map from long keys to int values, stored in two flat arrays.
+ *
+ * Uses open addressing with linear probing, and removes entries by shifting the
+ * following entries back, so no tombstones build up when the same keys are
+ * added and removed over and over during a search. Long.MIN_VALUE cannot be
+ * used as a key; it marks a free slot.
+ */
+class LongIntMap {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Construct an empty map.
+     * @param expected  the number of entries to make room for
+     */
+    LongIntMap (int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        java.util.Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the value of a key.
+     * @param key           the key
+     * @param absent        the value to return if the key is not in the map
+     * @return              the value of the key
+     */
+    int get (long key, int absent) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            if (keys[slot] == FREE) {
+                return absent;
+            }
+        }
+    }
+
+    /**
+     * Set the value of a key.
+     * @param key           the key, not Long.MIN_VALUE
+     * @param value         the value
+     */
+    void put (long key, int value) {
+        int slot = slot(key);
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = value;
+                grow();
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Add to the value of a key, removing the key when the value drops to 0.
+     * @param key           the key, not Long.MIN_VALUE
+     * @param delta         the amount to add; a missing key counts as 0
+     * @return              the new value
+     */
+    int add (long key, int delta) {
+        int value = get(key, 0) + delta;
+        if (value == 0) {
+            remove(key);
+        } else {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Remove a key.
+     * @param key           the key
+     */
+    void remove (long key) {
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == FREE) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Shift back the entries that probed past the removed one.
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+        }
+        keys[free] = FREE;
+        size--;
+    }
+
+    /**
+     * Get the number of entries in the map.
+     * @return              the size of the map
+     */
+    int size () {
+        return size;
+    }
+
+    /**
+     * Get the number of slots, for iterating with isUsed and keyAt.
+     * @return              the capacity of the map
+     */
+    int capacity () {
+        return keys.length;
+    }
+
+    /**
+     * Check whether a slot holds an entry.
+     * @param slot          the slot, from 0 to capacity - 1
+     * @return              true if the slot holds an entry
+     */
+    boolean isUsed (int slot) {
+        return keys[slot] != FREE;
+    }
+
+    /**
+     * Get the key held in a slot.
+     * @param slot          the slot, from 0 to capacity - 1
+     * @return              the key
+     */
+    long keyAt (int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Get the value held in a slot.
+     * @param slot          the slot, from 0 to capacity - 1
+     * @return              the value
+     */
+    int valueAt (int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Get a copy of the map.
+     * @return              a map with the same entries
+     */
+    LongIntMap copy () {
+        LongIntMap copy = new LongIntMap(2);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.mask = mask;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Get the home slot of a key.
+     * @param key           the key
+     * @return              the slot where probing starts
+     */
+    private int slot (long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Double the capacity and insert every entry again.
+     */
+    private void grow () {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        java.util.Arrays.fill(keys, FREE);
+        mask = keys.length - 1;
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+}
@@ -7,12 +7,19 @@ import Generalized_Tic_tac_Toe.Board;
  */
 class MiniMax {
 
-    private static double maxPly;
+    // State of one search, so that games on different threads do not share it.
+    private final double maxPly;
+    private final int[][] moveBuffers;
 
     /**
-     * MiniMax cannot be instantiated.
+     * MiniMax can only be instantiated by run.
+     * @param board         the Tic Tac Toe board to play on
+     * @param maxPly        the maximum depth
      */
-    private MiniMax() {}
+    private MiniMax (Board board, double maxPly) {
+        this.maxPly = maxPly;
+        this.moveBuffers = new int[board.getAvailableMoves().size() + 2][];
+    }
 
     /**
      * Execute the algorithm.
@@ -25,8 +32,7 @@ class MiniMax {
             throw new IllegalArgumentException("Maximum depth must be greater than 0.");
         }
 
-        MiniMax.maxPly = maxPly;
-        miniMax(player, board, 0);
+        new MiniMax(board, maxPly).miniMax(player, board, 0);
     }
 
     /**
@@ -36,7 +42,7 @@ class MiniMax {
      * @param currentPly    the current depth
      * @return              the score of the board
      */
-    private static int miniMax (Board.State player, Board board, int currentPly) {
+    private int miniMax (Board.State player, Board board, int currentPly) {
         if (currentPly++ == maxPly || board.isGameOver()) {
             return score(player, board);
         }
@@ -56,16 +62,19 @@ class MiniMax {
      * @param currentPly    the current depth
      * @return              the score of the board
      */
-    private static int getMax (Board.State player, Board board, int currentPly) {
+    private int getMax (Board.State player, Board board, int currentPly) {
         double bestScore = Double.NEGATIVE_INFINITY;
         int indexOfBestMove = -1;
 
-        for (Integer theMove : board.getAvailableMoves()) {
+        int[] moves = moveBuffer(board, currentPly);
+        int moveCount = board.copyAvailableMoves(moves);
 
-            Board modifiedBoard = board.getDeepCopy();
-            modifiedBoard.move(theMove);
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = moves[i];
 
-            int score = miniMax(player, modifiedBoard, currentPly);
+            board.makeMove(theMove);
+            int score = miniMax(player, board, currentPly);
+            board.unmakeMove();
 
             if (score >= bestScore) {
                 bestScore = score;
@@ -74,7 +83,9 @@ class MiniMax {
 
         }
 
-        board.move(indexOfBestMove);
+        if (currentPly == 1) {
+            board.move(indexOfBestMove);
+        }
         return (int)bestScore;
     }
 
@@ -85,16 +96,19 @@ class MiniMax {
      * @param currentPly    the current depth
      * @return              the score of the board
      */
-    private static int getMin (Board.State player, Board board, int currentPly) {
+    private int getMin (Board.State player, Board board, int currentPly) {
         double bestScore = Double.POSITIVE_INFINITY;
         int indexOfBestMove = -1;
 
-        for (Integer theMove : board.getAvailableMoves()) {
+        int[] moves = moveBuffer(board, currentPly);
+        int moveCount = board.copyAvailableMoves(moves);
 
-            Board modifiedBoard = board.getDeepCopy();
-            modifiedBoard.move(theMove);
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = moves[i];
 
-            int score = miniMax(player, modifiedBoard, currentPly);
+            board.makeMove(theMove);
+            int score = miniMax(player, board, currentPly);
+            board.unmakeMove();
 
             if (score <= bestScore) {
                 bestScore = score;
@@ -103,10 +117,26 @@ class MiniMax {
 
         }
 
-        board.move(indexOfBestMove);
+        if (currentPly == 1) {
+            board.move(indexOfBestMove);
+        }
         return (int)bestScore;
     }
 
+    /**
+     * Get the buffer for the moves of a ply, so the search does not allocate
+     * an array per node.
+     * @param board         the Tic Tac Toe board to play on
+     * @param currentPly    the current depth
+     * @return              an array large enough for every empty cell
+     */
+    private int[] moveBuffer (Board board, int currentPly) {
+        if (moveBuffers[currentPly] == null) {
+            moveBuffers[currentPly] = new int[board.getAvailableMoves().size()];
+        }
+        return moveBuffers[currentPly];
+    }
+
     /**
      * Get the score of the board.
      * @param player        the play that the AI will identify as
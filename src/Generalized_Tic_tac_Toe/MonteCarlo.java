@@ -0,0 +1,585 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Uses Monte Carlo Tree Search to play a move in a game of Tic Tac Toe.
+ *
+ * Instead of scoring positions at a fixed depth, the search plays many games
+ * from the position to the end (playouts) and grows a tree of the moves that
+ * did best in them. At each node it follows the child with the highest upper
+ * confidence bound (UCT): the share of the playouts through the child won by
+ * the player who played it, plus a bonus that shrinks as the child is tried
+ * more. A node gets its children once it has been visited a few times. They
+ * are the candidate moves near the stones, at most MAX_CHILDREN of them in
+ * the order of Board.getMoveScore, or only the wins and the blocks when a
+ * window of M - 1 stones is open. Playouts play random candidate moves,
+ * except that a player completes a window when it can and blocks a window the
+ * opponent is about to complete.
+ *
+ * Every thread grows the same tree (tree parallelism). A thread on its way
+ * down counts a few visits without a win at each node (virtual loss), which
+ * steers the other threads to other children until its playout is back. The
+ * nodes live in a pool of parallel arrays: a node is taken from the pool by
+ * an atomic counter, its children are published with a compare-and-set and
+ * its statistics are updated with atomic adds, so no thread ever waits for a
+ * lock. Every core grows the tree unless setThreadCount says otherwise.
+ *
+ * Searches running at once, as in the games of a tournament, each grow a tree
+ * of their own. When a search starts a move or two after the root of a tree
+ * no search is using, the subtree below those moves is kept and the search
+ * goes on from its statistics.
+ */
+final class MonteCarlo {
+
+    static final int DEFAULT_PLAYOUTS = 10000;
+
+    private static int poolSize = 1 << 20;
+    private static int threadCount = 1;
+    private static ExecutorService helpers;
+
+    static {
+        setThreadCount(Runtime.getRuntime().availableProcessors());
+    }
+
+    // The trees no search is using, kept so the next searches can reuse them.
+    // Searches running at once each take a tree of their own.
+    private static final List<MonteCarlo> idle = new ArrayList<>();
+
+    // UCT exploration constant, for results scored from 0 to 1.
+    private static final double EXPLORATION = 0.7;
+
+    // Visits a thread counts at each node of its path until its playout is back.
+    private static final int VIRTUAL_LOSS = 3;
+
+    // Visits a node needs before it gets children, and the most it gets.
+    private static final int EXPAND_VISITS = 4;
+    private static final int MAX_CHILDREN = 40;
+
+    // The first child of a node without children, and of one being given them.
+    private static final int LEAF = -1;
+    private static final int EXPANDING = -2;
+
+    // Results are counted in half points, so a draw is a whole number.
+    private static final int WIN = 2;
+    private static final int DRAW = 1;
+
+    // The node pool. A node holds the move that led to it, where its children
+    // start and how many there are, its visits and the half points won by the
+    // player who played the move.
+    private final int capacity;
+    private final int[] moves;
+    private final int[] childCounts;
+    private final AtomicIntegerArray firstChild;
+    private final AtomicIntegerArray visits;
+    private final AtomicIntegerArray points;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private Board rootBoard;
+    private int root;
+
+    /**
+     * MonteCarlo can only be instantiated by its own searches.
+     * @param capacity      the number of nodes in the pool
+     */
+    private MonteCarlo (int capacity) {
+        this.capacity = capacity;
+        moves = new int[capacity];
+        childCounts = new int[capacity];
+        firstChild = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        points = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * Set the number of threads that grow the tree.
+     * @param threads       the number of threads, including the calling thread
+     */
+    static synchronized void setThreadCount (int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be greater than 0.");
+        }
+
+        if (helpers != null) {
+            helpers.shutdown();
+            helpers = null;
+        }
+        if (threads > 1) {
+            helpers = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "MonteCarlo helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        threadCount = threads;
+    }
+
+    /**
+     * Replace the node pool with an empty one of a different size.
+     * @param size          the number of nodes
+     */
+    static synchronized void setNodePoolSize (int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("The pool must hold at least 2 nodes.");
+        }
+        poolSize = size;
+        idle.clear();
+    }
+
+    /**
+     * Forget the trees of the last searches, so that the next search starts
+     * from nothing.
+     */
+    static synchronized void clearTree () {
+        idle.clear();
+    }
+
+    /**
+     * Execute the algorithm with a number of playouts.
+     * @param board         the Tic Tac Toe board to play on
+     * @param playouts      the number of playouts, over all the threads
+     * @return              the statistics of the search
+     */
+    static SearchStats run (Board board, int playouts) {
+        if (playouts < 1) {
+            throw new IllegalArgumentException("Playouts must be greater than 0.");
+        }
+        return play(board, analyse(board, playouts, Long.MAX_VALUE));
+    }
+
+    /**
+     * Execute the algorithm until the time budget runs out.
+     * @param board         the Tic Tac Toe board to play on
+     * @param budget        the time to spend on the move
+     * @return              the statistics of the search
+     */
+    static SearchStats run (Board board, Duration budget) {
+        if (budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("Time budget must be greater than 0.");
+        }
+        return play(board, analyse(board, Integer.MAX_VALUE, System.nanoTime() + budget.toNanos()));
+    }
+
+    /**
+     * Search a position without playing the move.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param playouts      the number of playouts, over all the threads
+     * @param budget        the time to spend, or null for no limit
+     * @return              the statistics of the search, with the move it chose
+     */
+    static SearchStats analyse (Board board, int playouts, Duration budget) {
+        return analyse(board, playouts, budget == null ? Long.MAX_VALUE : System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * Play the move chosen by a search.
+     * @param board         the Tic Tac Toe board to play on
+     * @param stats         the statistics of the search
+     * @return              the statistics of the search
+     */
+    private static SearchStats play (Board board, SearchStats stats) {
+        board.move(stats.move);
+        return stats;
+    }
+
+    /**
+     * Grow the tree on all the threads until the playouts or the time run out.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param playouts      the number of playouts, over all the threads
+     * @param stopTime      the System.nanoTime value at which to stop
+     * @return              the statistics of the search, with the move it chose
+     */
+    private static SearchStats analyse (Board board, int playouts, long stopTime) {
+        if (board.isGameOver()) {
+            throw new IllegalArgumentException("The game is over.");
+        }
+
+        long startTime = System.nanoTime();
+        MonteCarlo tree = take(board);
+        int nodesBefore = tree.allocated.get();
+        ExecutorService pool;
+        int threads;
+        synchronized (MonteCarlo.class) {
+            pool = helpers;
+            threads = threadCount;
+        }
+
+        AtomicInteger started = new AtomicInteger();
+        List<Future<SearchStats>> running = new ArrayList<>();
+        for (int id = 1; id < threads; id++) {
+            Board copy = board.getDeepCopy();
+            running.add(pool.submit(() -> tree.grow(copy, started, playouts, stopTime)));
+        }
+
+        // Helpers still queued behind another search are not waited for.
+        SearchStats stats = tree.grow(board, started, playouts, stopTime);
+        for (Future<SearchStats> helper : running) {
+            if (helper.cancel(false)) {
+                continue;
+            }
+            try {
+                stats.add(helper.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A search thread failed.", e.getCause());
+            }
+        }
+
+        stats.nodes = Math.min(tree.allocated.get(), tree.capacity) - nodesBefore;
+        stats.nanos = System.nanoTime() - startTime;
+        tree.choose(board, stats);
+        release(tree);
+        return stats;
+    }
+
+    /**
+     * Take an idle tree for a search, one whose root is the position or
+     * leads to it if there is one, else the tree released last.
+     * @param board         the Tic Tac Toe board to search
+     * @return              the tree, with its root at the position of the board
+     */
+    private static synchronized MonteCarlo take (Board board) {
+        for (int i = idle.size() - 1; i >= 0; i--) {
+            if (idle.get(i).advance(board)) {
+                return idle.remove(i);
+            }
+        }
+
+        MonteCarlo tree = idle.isEmpty() ? new MonteCarlo(poolSize) : idle.remove(idle.size() - 1);
+        tree.reset(board);
+        return tree;
+    }
+
+    /**
+     * Give a tree back once its search is over.
+     * @param tree          the tree
+     */
+    private static synchronized void release (MonteCarlo tree) {
+        if (tree.capacity == poolSize) {
+            idle.add(tree);
+        }
+    }
+
+    /**
+     * Start a new tree at the position of a board.
+     * @param board         the Tic Tac Toe board
+     */
+    private void reset (Board board) {
+        allocated.set(0);
+        root = allocate(1);
+        moves[root] = -1;
+        rootBoard = board.getDeepCopy();
+    }
+
+    /**
+     * Move the root down to the position of a board, when the board is the
+     * position of the root after up to two more moves that the tree holds. The
+     * tree is not reused once half the pool is taken, as the nodes outside the
+     * new subtree are not given back.
+     * @param board         the Tic Tac Toe board
+     * @return              true if the root now stands for the board
+     */
+    private boolean advance (Board board) {
+        if (rootBoard == null || rootBoard.getBoardWidth() != board.getBoardWidth()
+                || rootBoard.getWinLength() != board.getWinLength() || allocated.get() > capacity / 2) {
+            return false;
+        }
+
+        int[] played = new int[2];
+        int count = 0;
+        for (int cell = 0; cell < board.getBoardWidth() * board.getBoardWidth(); cell++) {
+            Board.State before = rootBoard.getCell(cell);
+            if (before == board.getCell(cell)) {
+                continue;
+            }
+            if (before != Board.State.Blank || count == played.length) {
+                return false;
+            }
+            played[count++] = cell;
+        }
+
+        // The moves alternate, starting with the player to move at the root.
+        if (count == 2 && board.getCell(played[0]) != rootBoard.getTurn()) {
+            int swap = played[0];
+            played[0] = played[1];
+            played[1] = swap;
+        }
+        if (count > 0 && board.getCell(played[0]) != rootBoard.getTurn()
+                || count == 2 && board.getCell(played[1]) == rootBoard.getTurn()) {
+            return false;
+        }
+
+        int node = root;
+        for (int i = 0; i < count && node != -1; i++) {
+            node = child(node, played[i]);
+        }
+        if (node == -1) {
+            return false;
+        }
+        root = node;
+        rootBoard = board.getDeepCopy();
+        return true;
+    }
+
+    /**
+     * Find the child of a node reached by a move.
+     * @param node          the node
+     * @param move          the move
+     * @return              the child, or -1 if the node has no such child
+     */
+    private int child (int node, int move) {
+        int first = firstChild.get(node);
+        for (int i = first; i >= 0 && i < first + childCounts[node]; i++) {
+            if (moves[i] == move) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Take nodes from the pool and clear them.
+     * @param count         the number of nodes, next to each other
+     * @return              the first node, or -1 if the pool is used up
+     */
+    private int allocate (int count) {
+        if (allocated.get() + count > capacity) {
+            return -1;
+        }
+        int first = allocated.getAndAdd(count);
+        if (first + count > capacity) {
+            return -1;
+        }
+
+        for (int i = first; i < first + count; i++) {
+            childCounts[i] = 0;
+            firstChild.set(i, LEAF);
+            visits.set(i, 0);
+            points.set(i, 0);
+        }
+        return first;
+    }
+
+    /**
+     * Run playouts on one thread until the playouts or the time run out.
+     * @param board         the Tic Tac Toe board at the root, owned by this thread
+     * @param started       the playouts started by all the threads
+     * @param playouts      the number of playouts, over all the threads
+     * @param stopTime      the System.nanoTime value at which to stop
+     * @return              the statistics of this thread
+     */
+    private SearchStats grow (Board board, AtomicInteger started, int playouts, long stopTime) {
+        int cells = board.getBoardWidth() * board.getBoardWidth();
+        int[] path = new int[cells + 1];
+        int[] buffer = new int[cells];
+        long[] ranked = new long[cells];
+        Board.State rootTurn = board.getTurn();
+        SearchStats stats = new SearchStats();
+
+        while (started.getAndIncrement() < playouts && System.nanoTime() < stopTime) {
+            int length = 0;
+            int node = root;
+            path[length++] = node;
+            visits.addAndGet(node, VIRTUAL_LOSS);
+
+            // Go down the tree, giving a node its children once it has been visited enough.
+            while (!board.isGameOver()) {
+                int first = firstChild.get(node);
+                if (first == LEAF && (node == root || visits.get(node) >= EXPAND_VISITS + VIRTUAL_LOSS)) {
+                    first = expand(node, board, buffer, ranked);
+                }
+                if (first < 0) {
+                    break;
+                }
+                node = select(node, first);
+                board.makeMove(moves[node]);
+                path[length++] = node;
+                visits.addAndGet(node, VIRTUAL_LOSS);
+            }
+            stats.depth = Math.max(stats.depth, length - 1);
+
+            Board.State winner = board.isGameOver() ? board.getWinner() : playout(board, buffer);
+            stats.evaluations++;
+
+            // Back up the result, taking the virtual loss away. The player who
+            // played the move of the root is the one not to move at the root.
+            for (int i = length - 1; i >= 0; i--) {
+                if (i > 0) {
+                    board.unmakeMove();
+                }
+                Board.State mover = (i % 2 == 1) == (rootTurn == Board.State.X) ? Board.State.X : Board.State.O;
+                visits.addAndGet(path[i], 1 - VIRTUAL_LOSS);
+                points.addAndGet(path[i], winner == mover ? WIN : winner == Board.State.Blank ? DRAW : 0);
+            }
+        }
+        stats.selectiveDepth = stats.depth;
+        return stats;
+    }
+
+    /**
+     * Give a node its children, unless another thread is doing so already.
+     * @param node          the node
+     * @param board         the Tic Tac Toe board at the node
+     * @param buffer        room for the candidate moves
+     * @param ranked        room for the candidate moves with their scores
+     * @return              the first child, or a negative number if the node has none yet
+     */
+    private int expand (int node, Board board, int[] buffer, long[] ranked) {
+        if (!firstChild.compareAndSet(node, LEAF, EXPANDING)) {
+            return firstChild.get(node);
+        }
+
+        int m = board.getWinLength();
+        Board.State turn = board.getTurn();
+        Board.State opponent = (turn == Board.State.X) ? Board.State.O : Board.State.X;
+        Board.State forcing = board.getWinningWindows(turn, m - 1) > 0 ? turn
+                : board.getWinningWindows(opponent, m - 1) > 0 ? opponent : Board.State.Blank;
+
+        // Rank the candidates by their score, best first, as score and move in one long.
+        int available = board.copyCandidateMoves(buffer);
+        int count = 0;
+        for (int i = 0; i < available; i++) {
+            int move = buffer[i];
+            if (forcing != Board.State.Blank ? board.isWinningMove(move, forcing) : !board.isUseless(move)) {
+                ranked[count++] = (long) board.getMoveScore(move) << 32 | move;
+            }
+        }
+        if (count == 0) {
+            for (int i = 0; i < available; i++) {
+                ranked[count++] = (long) board.getMoveScore(buffer[i]) << 32 | buffer[i];
+            }
+        }
+        Arrays.sort(ranked, 0, count);
+        int last = count - 1;
+        count = Math.min(count, MAX_CHILDREN);
+
+        int first = allocate(count);
+        if (first == -1) {
+            firstChild.set(node, LEAF);
+            return LEAF;
+        }
+        for (int i = 0; i < count; i++) {
+            moves[first + i] = (int) ranked[last - i];
+        }
+        childCounts[node] = count;
+        firstChild.set(node, first);
+        return first;
+    }
+
+    /**
+     * Pick the child with the highest upper confidence bound. Children never
+     * visited come first, in the order of their score.
+     * @param node          the node
+     * @param first         the first child of the node
+     * @return              the child
+     */
+    private int select (int node, int first) {
+        double logVisits = Math.log(Math.max(visits.get(node), 1));
+        int best = first;
+        double bestBound = Double.NEGATIVE_INFINITY;
+
+        for (int child = first; child < first + childCounts[node]; child++) {
+            int n = visits.get(child);
+            if (n == 0) {
+                return child;
+            }
+            double bound = points.get(child) / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+            if (bound > bestBound) {
+                bestBound = bound;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Play random candidate moves to the end of the game. A player completes
+     * a window when it can and otherwise blocks a window of the opponent that
+     * is about to be completed.
+     * @param board         the Tic Tac Toe board, left as it was found
+     * @param buffer        room for the candidate moves
+     * @return              the winner, or Blank for a draw
+     */
+    private static Board.State playout (Board board, int[] buffer) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int m = board.getWinLength();
+        int played = 0;
+        Board.State winner = Board.State.Blank;
+
+        while (!board.isGameOver() && board.getAvailableMoves().size() > 0) {
+            Board.State turn = board.getTurn();
+            Board.State opponent = (turn == Board.State.X) ? Board.State.O : Board.State.X;
+            if (board.getWinningWindows(turn, m - 1) > 0) {
+                winner = turn;
+                break;
+            }
+
+            int count = board.copyCandidateMoves(buffer);
+            int move = buffer[random.nextInt(count)];
+            if (board.getWinningWindows(opponent, m - 1) > 0) {
+                for (int i = 0; i < count; i++) {
+                    if (board.isWinningMove(buffer[i], opponent)) {
+                        move = buffer[i];
+                        break;
+                    }
+                }
+            }
+            board.makeMove(move);
+            played++;
+        }
+
+        if (board.isGameOver()) {
+            winner = board.getWinner();
+        }
+        for (; played > 0; played--) {
+            board.unmakeMove();
+        }
+        return winner;
+    }
+
+    /**
+     * Choose the child of the root with the most visits, and score it from
+     * the point of view of O, from -1000 for a sure loss to 1000 for a sure win.
+     * @param board         the Tic Tac Toe board at the root
+     * @param stats         filled with the move and its score
+     */
+    private void choose (Board board, SearchStats stats) {
+        int first = firstChild.get(root);
+        int best = -1;
+        for (int child = first; child >= 0 && child < first + childCounts[root]; child++) {
+            if (best == -1 || visits.get(child) > visits.get(best)) {
+                best = child;
+            }
+        }
+
+        if (best == -1 || visits.get(best) == 0) {
+            // Too few playouts to give the root children: play the candidate
+            // with the best score.
+            int[] buffer = new int[board.getBoardWidth() * board.getBoardWidth()];
+            int available = board.copyCandidateMoves(buffer);
+            stats.move = buffer[0];
+            for (int i = 1; i < available; i++) {
+                if (board.getMoveScore(buffer[i]) > board.getMoveScore(stats.move)) {
+                    stats.move = buffer[i];
+                }
+            }
+            return;
+        }
+        stats.move = moves[best];
+        int share = (int) (1000L * points.get(best) / visits.get(best)) - 1000;
+        stats.score = (board.getTurn() == Board.State.O) ? share : -share;
+    }
+
+}
@@ -0,0 +1,252 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A read-only table of opening positions and the moves to play in them,
+ * memory-mapped from a file.
+ *
+ * The file starts with a header (magic number, version, board width, M and the
+ * number of positions), followed by the Zobrist keys of the positions sorted
+ * in increasing order, followed by one record per key holding the move and
+ * the score of the search that chose it. A lookup is a binary search over the
+ * keys, reading the mapped file directly, so opening a book costs nothing
+ * however large it is, and the operating system shares the pages between
+ * every process using the same book.
+ *
+ * Zobrist keys depend on the shape of the board, so a book only answers for
+ * boards of the width and M it was built for. Books are built offline by
+ * self-play with build, or from the command line with main.
+ */
+class OpeningBook {
+
+    private static final int MAGIC = 0x47545442;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 20;
+    private static final int KEY_BYTES = 8;
+    private static final int RECORD_BYTES = 8;
+
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int m;
+    private final int size;
+    private final int recordStart;
+
+    /**
+     * OpeningBook can only be instantiated by open.
+     * @param buffer        the mapped file
+     */
+    private OpeningBook (MappedByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an opening book.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported opening book version " + buffer.getInt(4) + ".");
+        }
+
+        this.buffer = buffer;
+        width = buffer.getInt(8);
+        m = buffer.getInt(12);
+        size = buffer.getInt(16);
+        recordStart = HEADER_BYTES + size * KEY_BYTES;
+
+        if (size < 0 || (long) recordStart + (long) size * RECORD_BYTES != buffer.capacity()) {
+            throw new IllegalArgumentException("The opening book is truncated or corrupt.");
+        }
+    }
+
+    /**
+     * Map an opening book file into memory.
+     * @param file          the book file
+     * @return              the book
+     * @throws IOException  if the file cannot be read
+     */
+    static OpeningBook open (Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The opening book is larger than 2 GB.");
+            }
+            // The mapping stays valid after the channel is closed.
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Get the number of positions in the book.
+     * @return              the size of the book
+     */
+    int size () {
+        return size;
+    }
+
+    /**
+     * Check whether the book was built for boards of a given shape.
+     * @param board         the Tic Tac Toe board
+     * @return              true if the width and M of the board match the book
+     */
+    boolean fits (Board board) {
+        return board.getBoardWidth() == width && board.getWinLength() == m;
+    }
+
+    /**
+     * Look up the move to play in a position.
+     * @param board         the Tic Tac Toe board
+     * @return              the move, or -1 if the position is not in the book
+     */
+    int probe (Board board) {
+        int i = find(board.getZobristKey());
+        if (i < 0 || !fits(board)) {
+            return -1;
+        }
+
+        // Two positions can share a key; never play an occupied cell.
+        int move = buffer.getInt(recordStart + i * RECORD_BYTES);
+        return board.getAvailableMoves().contains(move) ? move : -1;
+    }
+
+    /**
+     * Get the score the search gave the book move of a position.
+     * @param board         the Tic Tac Toe board
+     * @return              the score, or 0 if the position is not in the book
+     */
+    int score (Board board) {
+        int i = find(board.getZobristKey());
+        return (i < 0 || !fits(board)) ? 0 : buffer.getInt(recordStart + i * RECORD_BYTES + 4);
+    }
+
+    /**
+     * Binary search the sorted keys.
+     * @param key           the Zobrist key of a position
+     * @return              the position of the key in the book, or -1
+     */
+    private int find (long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(HEADER_BYTES + middle * KEY_BYTES);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write a book file.
+     * @param file          the file to write, replaced if it exists
+     * @param width         the width of the boards the positions come from
+     * @param m             the M of the boards the positions come from
+     * @param entries       for each Zobrist key, the move and its score
+     * @throws IOException  if the file cannot be written
+     */
+    static void write (Path file, int width, int m, SortedMap<Long, int[]> entries) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + entries.size() * (KEY_BYTES + RECORD_BYTES));
+        out.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(m).putInt(entries.size());
+        for (long key : entries.keySet()) {
+            out.putLong(key);
+        }
+        for (int[] record : entries.values()) {
+            out.putInt(record[0]).putInt(record[1]);
+        }
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Build a book by self-play. After the first move, each game plays a few
+     * random moves near the stones so that the games spread out, then follows
+     * the search. Every
+     * position within the first plies of a game is searched once and added.
+     * @param width         the number of rows and columns
+     * @param m             the number of stones in a row that wins
+     * @param games         the number of self-play games
+     * @param plies         the number of moves of each game to add to the book
+     * @param randomPlies   the number of random moves at the start of each game
+     * @param budget        the time to search each position
+     * @param seed          the seed of the random moves
+     * @return              for each Zobrist key, the move and its score
+     */
+    static SortedMap<Long, int[]> build (int width, int m, int games, int plies, int randomPlies, Duration budget, long seed) {
+        SortedMap<Long, int[]> entries = new TreeMap<>();
+        java.util.Random random = new java.util.Random(seed);
+        int[] moves = new int[width * width];
+
+        for (int game = 0; game < games; game++) {
+            Board board = new Board(width, m);
+
+            // The engine never searches the empty board, so neither does the book.
+            board.move(AlphaBetaAdvanced.openingMove(board));
+
+            for (int ply = 1; ply < plies && !board.isGameOver(); ply++) {
+                int[] record = entries.get(board.getZobristKey());
+                if (record == null) {
+                    record = AlphaBetaAdvanced.analyse(board, budget);
+                    entries.put(board.getZobristKey(), record);
+                }
+
+                int move = record[0];
+                if (ply < randomPlies) {
+                    int count = board.copyCandidateMoves(moves);
+                    int useful = 0;
+                    for (int i = 0; i < count; i++) {
+                        if (!board.isUseless(moves[i])) {
+                            moves[useful++] = moves[i];
+                        }
+                    }
+                    if (useful > 0) {
+                        move = moves[random.nextInt(useful)];
+                    }
+                }
+                board.move(move);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Build a book from the command line, for example
+     * "15 5 200 8 2 500 book.bin" for 200 games on a 15x15 board with 5 in a
+     * row, 8 book moves per game, 2 random moves and 500 ms per position.
+     * @param args          width, M, games, plies, random plies, milliseconds per position and the file
+     * @throws IOException  if the file cannot be written
+     */
+    public static void main (String[] args) throws IOException {
+        if (args.length != 7) {
+            System.out.println("Usage: OpeningBook width m games plies randomPlies millisPerPosition file");
+            return;
+        }
+
+        int width = Integer.parseInt(args[0]);
+        int m = Integer.parseInt(args[1]);
+        Duration budget = Duration.ofMillis(Long.parseLong(args[5]));
+        SortedMap<Long, int[]> entries = build(width, m, Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), Integer.parseInt(args[4]), budget, 1);
+
+        Path file = Paths.get(args[6]);
+        write(file, width, m, entries);
+        System.out.println("Wrote " + entries.size() + " positions to " + file + ".");
+    }
+
+}
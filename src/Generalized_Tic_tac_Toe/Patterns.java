@@ -0,0 +1,156 @@
+package Generalized_Tic_tac_Toe;
+
+/**
+ * Lookup tables that tell what shape a player makes by playing a cell.
+ *
+ * The shape only depends on the 2M - 2 cells around the cell in one line, so
+ * the line is encoded as a base-3 key, one digit per cell seen from the
+ * player: 0 is empty, 1 holds a stone of the player and 2 is blocked, by a
+ * stone of the opponent or by the edge of the board. Digit 0 is the cell
+ * furthest before the centre along the direction; the centre itself has no
+ * digit. Every key is classified once per M, when the table is first asked
+ * for, and the shapes are scored with SHAPE_VALUES.
+ *
+ * The table has 3^(2M - 2) entries, so it is only built up to MAX_M. Boards
+ * with a longer win fall back to counting windows.
+ */
+final class Patterns {
+
+    static final int MAX_M = 6;
+
+    // The shapes, from weakest to strongest. An open four has two cells that
+    // complete it, so it cannot be stopped; an open three can become an open
+    // four, and an open two an open three.
+    static final int NONE = 0;
+    static final int ONE = 1;
+    static final int TWO = 2;
+    static final int OPEN_TWO = 3;
+    static final int THREE = 4;
+    static final int OPEN_THREE = 5;
+    static final int FOUR = 6;
+    static final int OPEN_FOUR = 7;
+    static final int FIVE = 8;
+
+    static final int[] SHAPE_VALUES = {0, 1, 10, 80, 100, 800, 1000, 10000, 100000};
+
+    private static final Patterns[] TABLES = new Patterns[MAX_M + 1];
+
+    final int m;
+    final int[] powers;
+    private final int[] offsetPowers;
+    private final int[] values;
+
+    /**
+     * Get the tables for a win length.
+     * @param m         the number of stones in a row that wins
+     * @return          the shared tables, or null if M is larger than MAX_M
+     */
+    static Patterns of (int m) {
+        if (m < 1 || m > MAX_M) {
+            return null;
+        }
+        synchronized (TABLES) {
+            if (TABLES[m] == null) {
+                TABLES[m] = new Patterns(m);
+            }
+            return TABLES[m];
+        }
+    }
+
+    /**
+     * Patterns can only be instantiated by of.
+     * @param m         the number of stones in a row that wins
+     */
+    private Patterns (int m) {
+        this.m = m;
+        powers = new int[2 * m - 2];
+        int keys = 1;
+        for (int i = 0; i < powers.length; i++) {
+            powers[i] = keys;
+            keys *= 3;
+        }
+
+        values = new int[keys];
+        offsetPowers = new int[2 * m - 1];
+        for (int offset = 1 - m; offset < m; offset++) {
+            offsetPowers[offset + m - 1] = (offset == 0) ? 0 : powers[digit(offset)];
+        }
+        for (int key = 0; key < keys; key++) {
+            long own = 1L << (m - 1);
+            long blocked = 0;
+            for (int i = 0, rest = key; i < powers.length; i++, rest /= 3) {
+                long bit = 1L << (i < m - 1 ? i : i + 1);
+                if (rest % 3 == 1) own |= bit;
+                if (rest % 3 == 2) blocked |= bit;
+            }
+            values[key] = SHAPE_VALUES[classify(own, blocked)];
+        }
+    }
+
+    /**
+     * Get the digit of a cell in the key of another cell of the same line.
+     * @param offset    the position of the cell relative to the centre, not 0
+     * @return          the digit, from 0 to 2M - 3
+     */
+    int digit (int offset) {
+        return offset < 0 ? offset + m - 1 : offset + m - 2;
+    }
+
+    /**
+     * Get the place value of a cell in the key of another cell of the same line.
+     * @param offset    the position of the cell relative to the centre, not 0
+     * @return          3 to the power of the digit of the cell
+     */
+    int power (int offset) {
+        return offsetPowers[offset + m - 1];
+    }
+
+    /**
+     * Get the value of the shape a player makes by playing the centre of a line.
+     * @param key       the key of the line seen from the player
+     * @return          the value of the shape
+     */
+    int value (int key) {
+        return values[key];
+    }
+
+    /**
+     * Classify a line once the centre has been played, looking only at the
+     * windows through the centre.
+     * @param own       the cells of the player, bit M - 1 is the centre
+     * @param blocked   the cells the player cannot use
+     * @return          the shape
+     */
+    private int classify (long own, long blocked) {
+        long windowMask = (1L << m) - 1;
+        long completions = 0;
+        long empty = 0;
+        int most = -1;
+
+        for (int j = 0; j < m; j++) {
+            long window = windowMask << j;
+            if ((blocked & window) != 0) continue;
+
+            int count = Long.bitCount(own & window);
+            if (count == m) return FIVE;
+            if (count == m - 1) completions |= window & ~own;
+            empty |= window & ~own;
+            most = Math.max(most, count);
+        }
+
+        if (Long.bitCount(completions) >= 2) return OPEN_FOUR;
+        if (completions != 0) return FOUR;
+        if (most < 0) return NONE;
+        if (most < m - 3) return ONE;
+
+        // Look one move ahead for the open shape of the next size up.
+        int open = (most == m - 2) ? OPEN_FOUR : OPEN_THREE;
+        for (; empty != 0; empty &= empty - 1) {
+            if (classify(own | Long.lowestOneBit(empty), blocked) == open) {
+                return (most == m - 2) ? OPEN_THREE : OPEN_TWO;
+            }
+        }
+        return (most == m - 2) ? THREE : TWO;
+    }
+
+}
@@ -0,0 +1,145 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Searches on the opponent's time. While the opponent thinks, the replies
+ * it is most likely to play are tried one at a time and the position after
+ * each is searched as if it were the engine's turn. When the opponent moves,
+ * the search is cancelled and, if the move was one of those searched to the
+ * end (a ponder hit), its result is played at once. Otherwise the engine
+ * searches as usual, but with the transposition table already holding much
+ * of the tree below the likely replies.
+ *
+ * The reply the engine expects, the best move of the transposition table, is
+ * tried first and the rest in the order of Board.getMoveScore.
+ */
+final class Ponder implements Runnable {
+
+    // The number of likely replies searched.
+    private static final int REPLIES = 3;
+
+    private final Board board;
+    private final int ply;
+    private final Duration budget;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final ConcurrentHashMap<Long, SearchStats> results = new ConcurrentHashMap<>();
+
+    /**
+     * Construct Ponder.
+     * @param board         a copy of the board, with the opponent to move
+     * @param ply           the depth to search each reply to
+     * @param budget        the time to spend on each reply, or null for no limit
+     */
+    private Ponder (Board board, int ply, Duration budget) {
+        this.board = board;
+        this.ply = ply;
+        this.budget = budget;
+    }
+
+    /**
+     * Start pondering a position in the background.
+     * @param board         the Tic Tac Toe board, with the opponent to move; it is copied
+     * @param ply           the depth to search each reply to
+     * @param budget        the time to spend on each reply, or null for no limit
+     * @param executor      the thread to ponder on
+     * @return              the pondering, to be stopped when the opponent moves
+     * @throws java.util.concurrent.RejectedExecutionException if the executor cannot take it
+     */
+    static Ponder start (Board board, int ply, Duration budget, Executor executor) {
+        Ponder ponder = new Ponder(board.getDeepCopy(), ply, budget);
+        executor.execute(ponder);
+        return ponder;
+    }
+
+    /**
+     * Stop pondering and look up the position the opponent's move led to.
+     * Returns at once; the search in progress gives up within a few thousand
+     * nodes.
+     * @param board         the Tic Tac Toe board after the opponent's move
+     * @return              the search of the position, or null if it was not searched to the end
+     */
+    SearchStats stop (Board board) {
+        cancel();
+        return results.get(board.getZobristKey());
+    }
+
+    /**
+     * Stop pondering without using the results, as when the game ends.
+     */
+    void cancel () {
+        cancelled.set(true);
+    }
+
+    @Override
+    public void run () {
+        if (board.isGameOver()) {
+            return;
+        }
+
+        for (int reply : likelyReplies()) {
+            if (cancelled.get()) {
+                return;
+            }
+            if (reply == -1 || !board.makeMove(reply)) {
+                continue;
+            }
+
+            if (!board.isGameOver() && AlphaBetaAdvanced.bookMove(board) == -1) {
+                SearchStats stats = AlphaBetaAdvanced.analyse(board, ply, budget, cancelled);
+                if (!cancelled.get() && stats.getMove() != -1) {
+                    results.put(board.getZobristKey(), stats);
+                }
+            }
+            board.unmakeMove();
+        }
+    }
+
+    /**
+     * Pick the replies to search: the one the transposition table expects,
+     * then the best of the rest by their ordering score.
+     * @return              the replies, best first, -1 where there are too few
+     */
+    private int[] likelyReplies () {
+        int[] replies = new int[REPLIES];
+        int[] order = new int[REPLIES];
+        Arrays.fill(replies, -1);
+        Arrays.fill(order, Integer.MIN_VALUE);
+
+        int expected = AlphaBetaAdvanced.expectedMove(board);
+        int width = board.getBoardWidth();
+        if (expected >= 0 && expected < width * width && board.getCell(expected) == Board.State.Blank) {
+            replies[0] = expected;
+            order[0] = Integer.MAX_VALUE;
+        }
+
+        int[] moves = new int[width * width];
+        int count = board.copyCandidateMoves(moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (move == replies[0] || board.isUseless(move)) {
+                continue;
+            }
+
+            // Insert into the short list, kept sorted best first.
+            int score = board.getMoveScore(move);
+            for (int j = 0; j < REPLIES; j++) {
+                if (score > order[j]) {
+                    System.arraycopy(replies, j, replies, j + 1, REPLIES - j - 1);
+                    System.arraycopy(order, j, order, j + 1, REPLIES - j - 1);
+                    replies[j] = move;
+                    order[j] = score;
+                    break;
+                }
+            }
+        }
+        return replies;
+    }
+
+}
@@ -0,0 +1,438 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The exact value of every reachable position of a small board, solved by
+ * retrograde analysis.
+ *
+ * A position is numbered by reading its cells as a base-3 number (0 blank,
+ * 1 X, 2 O, cell 0 the lowest digit). Of the eight rotations and reflections
+ * of a position only the one with the smallest number is stored. The solver
+ * first walks forward from the empty board, one ply at a time, to list the
+ * reachable positions; it then walks back from the last ply to the first,
+ * valuing each position from the positions it leads to. Values are kept two
+ * bits per position, indexed by the position number, so a lookup is a few
+ * additions and one array read.
+ *
+ * Position numbers must fit an int, so only boards of up to 16 cells can be
+ * solved: 3x3 and 4x4 with any M. The table of a 4x4 board is 3^16 two-bit
+ * values, about 10 MB.
+ */
+class PositionDatabase {
+
+    // Values of a position for the player to move. UNKNOWN marks positions
+    // that cannot be reached.
+    static final int UNKNOWN = 0;
+    static final int LOSS = 1;
+    static final int DRAW = 2;
+    static final int WIN = 3;
+
+    static final int MAX_CELLS = 16;
+
+    private static final int MAGIC = 0x47545444;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private static final ConcurrentHashMap<Long, PositionDatabase> SOLVED = new ConcurrentHashMap<>();
+
+    private final int width;
+    private final int m;
+    private final int cells;
+    private final int[] powers;
+    private final int[][] symmetries;
+    private final int[] windows;
+    private final LongBuffer values;
+
+    /**
+     * PositionDatabase can only be instantiated by solve and open.
+     * @param width     the number of rows and columns
+     * @param m         the number of stones in a row that wins
+     * @param values    the packed values, or null to start with every value UNKNOWN
+     */
+    private PositionDatabase (int width, int m, LongBuffer values) {
+        if (width < 1 || m < 1 || m > width) {
+            throw new IllegalArgumentException("Board width must be at least 1 and M between 1 and the width.");
+        }
+        if (width * width > MAX_CELLS) {
+            throw new IllegalArgumentException("Only boards of up to " + MAX_CELLS + " cells can be solved.");
+        }
+
+        this.width = width;
+        this.m = m;
+        cells = width * width;
+        powers = new int[cells + 1];
+        powers[0] = 1;
+        for (int i = 1; i <= cells; i++) {
+            powers[i] = powers[i - 1] * 3;
+        }
+
+        // Where each of the eight symmetries of the square sends each cell.
+        symmetries = new int[8][cells];
+        for (int row = 0; row < width; row++) {
+            for (int col = 0; col < width; col++) {
+                int r = width - 1 - row;
+                int c = width - 1 - col;
+                int[] images = {row * width + col, col * width + r, r * width + c, c * width + row,
+                                row * width + c, r * width + col, col * width + row, c * width + r};
+                for (int t = 0; t < 8; t++) {
+                    symmetries[t][row * width + col] = images[t];
+                }
+            }
+        }
+
+        // The winning windows as masks of cells.
+        int[] found = new int[4 * cells];
+        int count = 0;
+        int[][] steps = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}};
+        for (int[] step : steps) {
+            for (int row = 0; row < width; row++) {
+                for (int col = 0; col < width; col++) {
+                    int endCol = col + (m - 1) * step[0];
+                    int endRow = row + (m - 1) * step[1];
+                    if (endCol < 0 || endCol >= width || endRow >= width) continue;
+
+                    int mask = 0;
+                    for (int k = 0; k < m; k++) {
+                        mask |= 1 << ((row + k * step[1]) * width + col + k * step[0]);
+                    }
+                    found[count++] = mask;
+                }
+            }
+        }
+        windows = Arrays.copyOf(found, count);
+
+        this.values = (values != null) ? values : LongBuffer.wrap(new long[(powers[cells] + 31) / 32]);
+    }
+
+    /**
+     * Get the database of a shape of board, solving it the first time it is asked for.
+     * @param width     the number of rows and columns
+     * @param m         the number of stones in a row that wins
+     * @return          the shared database
+     */
+    static PositionDatabase of (int width, int m) {
+        return SOLVED.computeIfAbsent((long) width << 32 | m, key -> solve(width, m));
+    }
+
+    /**
+     * Use a database, for example one read with open, for its shape of board
+     * instead of solving it again.
+     * @param database  the database
+     */
+    static void register (PositionDatabase database) {
+        SOLVED.put((long) database.width << 32 | database.m, database);
+    }
+
+    /**
+     * Solve every reachable position of a board.
+     * @param width     the number of rows and columns
+     * @param m         the number of stones in a row that wins
+     * @return          the database
+     */
+    static PositionDatabase solve (int width, int m) {
+        PositionDatabase database = new PositionDatabase(width, m, null);
+        int cells = database.cells;
+
+        // Forward: list the positions of each ply. The value table doubles as
+        // the set of positions seen so far, holding DRAW until solved.
+        int[][] plies = new int[cells + 1][];
+        int[] sizes = new int[cells + 1];
+        plies[0] = new int[] {0};
+        sizes[0] = 1;
+        database.setValue(0, DRAW);
+
+        int[] digits = new int[cells];
+        int[] images = new int[8];
+        for (int ply = 0; ply < cells; ply++) {
+            int[] next = new int[16];
+            int size = 0;
+            for (int i = 0; i < sizes[ply]; i++) {
+                int position = plies[ply][i];
+                if (database.isTerminal(position, digits)) continue;
+
+                database.images(digits, images);
+                int stone = (ply % 2 == 0) ? 1 : 2;
+                for (int cell = 0; cell < cells; cell++) {
+                    if (digits[cell] != 0) continue;
+
+                    int child = database.canonical(images, cell, stone);
+                    if (database.value(child) == UNKNOWN) {
+                        database.setValue(child, DRAW);
+                        if (size == next.length) {
+                            next = Arrays.copyOf(next, size * 2);
+                        }
+                        next[size++] = child;
+                    }
+                }
+            }
+            plies[ply + 1] = next;
+            sizes[ply + 1] = size;
+        }
+
+        // Backward: a position is won if some move leads to a position lost
+        // for the opponent, and lost if every move leads to one they win.
+        for (int ply = cells; ply >= 0; ply--) {
+            int stone = (ply % 2 == 0) ? 1 : 2;
+            for (int i = 0; i < sizes[ply]; i++) {
+                int position = plies[ply][i];
+                boolean over = database.isTerminal(position, digits);
+                int best = LOSS;
+
+                if (over) {
+                    best = database.hasLine(digits) ? LOSS : DRAW;
+                } else {
+                    database.images(digits, images);
+                    for (int cell = 0; cell < cells && best != WIN; cell++) {
+                        if (digits[cell] != 0) continue;
+                        best = Math.max(best, negate(database.value(database.canonical(images, cell, stone))));
+                    }
+                }
+                database.setValue(position, best);
+            }
+            plies[ply] = null;
+        }
+        return database;
+    }
+
+    /**
+     * Map a database file into memory.
+     * @param file          the database file
+     * @return              the database
+     * @throws IOException  if the file cannot be read
+     */
+    static PositionDatabase open (Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Not a position database.");
+            }
+
+            int width = buffer.getInt(8);
+            int m = buffer.getInt(12);
+            buffer.position(HEADER_BYTES);
+            PositionDatabase database = new PositionDatabase(width, m, buffer.slice().asLongBuffer());
+            if (database.values.capacity() != (database.powers[database.cells] + 31) / 32) {
+                throw new IllegalArgumentException("The position database is truncated or corrupt.");
+            }
+            return database;
+        }
+    }
+
+    /**
+     * Write the database to a file.
+     * @param file          the file to write, replaced if it exists
+     * @throws IOException  if the file cannot be written
+     */
+    void write (Path file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + values.capacity() * 8);
+        out.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(m);
+        for (int i = 0; i < values.capacity(); i++) {
+            out.putLong(values.get(i));
+        }
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Check whether the database was solved for boards of a given shape.
+     * @param board     the Tic Tac Toe board
+     * @return          true if the width and M of the board match the database
+     */
+    boolean fits (Board board) {
+        return board.getBoardWidth() == width && board.getWinLength() == m;
+    }
+
+    /**
+     * Get the value of a position for the player to move.
+     * @param board     the Tic Tac Toe board, of the shape of the database
+     * @return          WIN, DRAW or LOSS
+     */
+    int value (Board board) {
+        int[] digits = new int[cells];
+        int[] images = new int[8];
+        digits(board, digits);
+        images(digits, images);
+        int best = images[0];
+        for (int t = 1; t < 8; t++) {
+            best = Math.min(best, images[t]);
+        }
+        return value(best);
+    }
+
+    /**
+     * Get the best move of a position: a winning move if there is one, else a
+     * drawing one. Among those, a move that wins at once is preferred.
+     * @param board     the Tic Tac Toe board, of the shape of the database
+     * @return          the move, or -1 if the game is over
+     */
+    int bestMove (Board board) {
+        if (board.isGameOver()) {
+            return -1;
+        }
+
+        int[] digits = new int[cells];
+        int[] images = new int[8];
+        digits(board, digits);
+        images(digits, images);
+        int stone = (board.getTurn() == Board.State.X) ? 1 : 2;
+        int bestMove = -1;
+        int best = UNKNOWN;
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (digits[cell] != 0) continue;
+
+            int value = negate(value(canonical(images, cell, stone)));
+            if (value == WIN && board.isWinningMove(cell, board.getTurn())) {
+                return cell;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = cell;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Read the cells of a board as base-3 digits.
+     * @param board     the Tic Tac Toe board
+     * @param digits    filled with 0 for a blank cell, 1 for X and 2 for O
+     */
+    private void digits (Board board, int[] digits) {
+        for (int cell = 0; cell < cells; cell++) {
+            Board.State state = board.getCell(cell);
+            digits[cell] = (state == Board.State.X) ? 1 : (state == Board.State.O) ? 2 : 0;
+        }
+    }
+
+    /**
+     * Number the eight symmetric images of a position.
+     * @param digits    the cells of the position
+     * @param images    filled with the eight position numbers
+     */
+    private void images (int[] digits, int[] images) {
+        for (int t = 0; t < 8; t++) {
+            int number = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                number += digits[cell] * powers[symmetries[t][cell]];
+            }
+            images[t] = number;
+        }
+    }
+
+    /**
+     * Get the stored number of the position after a move.
+     * @param images    the eight numbers of the position before the move
+     * @param cell      the empty cell played
+     * @param stone     1 for X, 2 for O
+     * @return          the smallest number of the eight images after the move
+     */
+    private int canonical (int[] images, int cell, int stone) {
+        int best = Integer.MAX_VALUE;
+        for (int t = 0; t < 8; t++) {
+            best = Math.min(best, images[t] + stone * powers[symmetries[t][cell]]);
+        }
+        return best;
+    }
+
+    /**
+     * Read the cells of a position and check whether the game is over there.
+     * @param position  the position number
+     * @param digits    filled with the cells of the position
+     * @return          true if a player has M in a row or the board is full
+     */
+    private boolean isTerminal (int position, int[] digits) {
+        boolean full = true;
+        for (int cell = 0; cell < cells; cell++, position /= 3) {
+            digits[cell] = position % 3;
+            full &= digits[cell] != 0;
+        }
+        return full || hasLine(digits);
+    }
+
+    /**
+     * Check whether either player has M in a row.
+     * @param digits    the cells of the position
+     * @return          true if a window is full of one player's stones
+     */
+    private boolean hasLine (int[] digits) {
+        int maskX = 0;
+        int maskO = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (digits[cell] == 1) maskX |= 1 << cell;
+            if (digits[cell] == 2) maskO |= 1 << cell;
+        }
+        for (int window : windows) {
+            if ((maskX & window) == window || (maskO & window) == window) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Turn a value for one player into the value for the other.
+     * @param value     WIN, DRAW, LOSS or UNKNOWN
+     * @return          the value for the opponent
+     */
+    private static int negate (int value) {
+        return (value == UNKNOWN) ? UNKNOWN : WIN + LOSS - value;
+    }
+
+    /**
+     * Get the stored value of a position number.
+     * @param position  the position number
+     * @return          the two-bit value
+     */
+    private int value (int position) {
+        return (int) (values.get(position >>> 5) >>> ((position & 31) << 1)) & 3;
+    }
+
+    /**
+     * Set the stored value of a position number.
+     * @param position  the position number
+     * @param value     the two-bit value
+     */
+    private void setValue (int position, int value) {
+        int shift = (position & 31) << 1;
+        long word = values.get(position >>> 5);
+        values.put(position >>> 5, word & ~(3L << shift) | (long) value << shift);
+    }
+
+    /**
+     * Solve a board and write its database, for example "4 3 4x4x3.db".
+     * @param args          width, M and the file
+     * @throws IOException  if the file cannot be written
+     */
+    public static void main (String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: PositionDatabase width m file");
+            return;
+        }
+
+        long start = System.nanoTime();
+        PositionDatabase database = solve(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        Path file = Paths.get(args[2]);
+        database.write(file);
+
+        String[] outcomes = {"unknown", "a win for O", "a draw", "a win for X"};
+        System.out.println("Solved in " + (System.nanoTime() - start) / 1000000 + " ms, the game is "
+                + outcomes[database.value(0)] + ". Wrote " + file + ".");
+    }
+
+}
@@ -17,14 +17,8 @@ class Random {
      * @param board     the Tic Tac Toe board to play on
      */
     static void run (Board board) {
-        int[] moves = new int[board.getAvailableMoves().size()];
-        int index = 0;
-
-        for (Integer item : board.getAvailableMoves()) {
-            moves[index++] = item;
-        }
-
-        int randomMove = moves[new java.util.Random().nextInt(moves.length)];
+        IntSet moves = board.getAvailableMoves();
+        int randomMove = moves.get(java.util.concurrent.ThreadLocalRandom.current().nextInt(moves.size()));
         board.move(randomMove);
     }
 
@@ -0,0 +1,158 @@
+package Generalized_Tic_tac_Toe;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Adds up the statistics of every search and publishes them over JMX, so that
+ * a running game or server can be watched with JConsole or any other JMX
+ * client. The bean is registered with the platform MBean server the first time
+ * a search is recorded.
+ */
+class SearchMetrics implements SearchMetricsMXBean {
+
+    static final String NAME = "Generalized_Tic_tac_Toe:type=SearchMetrics";
+
+    private static final SearchMetrics INSTANCE = register(new SearchMetrics());
+
+    private long searches;
+    private SearchStats total = new SearchStats();
+    private SearchStats last = new SearchStats();
+
+    /**
+     * SearchMetrics is a single instance.
+     */
+    private SearchMetrics () {}
+
+    /**
+     * Register the bean, unless JMX is unavailable or the name is taken.
+     * @param metrics   the bean
+     * @return          the bean
+     */
+    private static SearchMetrics register (SearchMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(NAME));
+        } catch (JMException | SecurityException e) {
+            // The statistics are still counted, just not published.
+        }
+        return metrics;
+    }
+
+    /**
+     * Add a finished search to the totals.
+     * @param stats     the statistics of the search
+     */
+    static void record (SearchStats stats) {
+        INSTANCE.add(stats);
+    }
+
+    /**
+     * Add a finished search to the totals.
+     * @param stats     the statistics of the search
+     */
+    private synchronized void add (SearchStats stats) {
+        searches++;
+        total.add(stats);
+        total.nanos += stats.nanos;
+        last = stats;
+    }
+
+    @Override
+    public synchronized long getSearches () {
+        return searches;
+    }
+
+    @Override
+    public synchronized long getTotalNodes () {
+        return total.nodes;
+    }
+
+    @Override
+    public synchronized long getTotalEvaluations () {
+        return total.evaluations;
+    }
+
+    @Override
+    public synchronized long getTotalCutoffs () {
+        return total.cutoffs;
+    }
+
+    @Override
+    public synchronized double getFirstMoveCutoffRate () {
+        return total.cutoffs == 0 ? 0 : 100.0 * total.firstMoveCutoffs / total.cutoffs;
+    }
+
+    @Override
+    public synchronized double getAverageCutoffIndex () {
+        return total.getAverageCutoffIndex();
+    }
+
+    @Override
+    public synchronized double getTableHitRate () {
+        return total.tableProbes == 0 ? 0 : 100.0 * total.tableHits / total.tableProbes;
+    }
+
+    @Override
+    public synchronized long getTotalPrunedMoves () {
+        return total.prunedMoves;
+    }
+
+    @Override
+    public synchronized long getTotalResearches () {
+        return total.researches;
+    }
+
+    @Override
+    public synchronized long getTotalReductions () {
+        return total.reductions;
+    }
+
+    @Override
+    public synchronized long getTotalFutilityPrunes () {
+        return total.futilityPrunes;
+    }
+
+    @Override
+    public synchronized long getTotalQuiescenceNodes () {
+        return total.quiescenceNodes;
+    }
+
+    @Override
+    public synchronized long getTotalTimeMillis () {
+        return total.nanos / 1000000;
+    }
+
+    @Override
+    public synchronized int getLastDepth () {
+        return last.depth;
+    }
+
+    @Override
+    public synchronized int getLastSelectiveDepth () {
+        return last.selectiveDepth;
+    }
+
+    @Override
+    public synchronized long getLastNodes () {
+        return last.nodes;
+    }
+
+    @Override
+    public synchronized long getLastNodesPerSecond () {
+        return last.getNodesPerSecond();
+    }
+
+    @Override
+    public synchronized long getLastTimeMillis () {
+        return last.nanos / 1000000;
+    }
+
+    @Override
+    public synchronized void reset () {
+        searches = 0;
+        total = new SearchStats();
+        last = new SearchStats();
+    }
+
+}
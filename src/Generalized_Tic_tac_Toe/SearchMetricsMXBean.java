@@ -0,0 +1,106 @@
+package Generalized_Tic_tac_Toe;
+
+/**
+ * The search statistics published over JMX, as the attributes of the bean
+ * Generalized_Tic_tac_Toe:type=SearchMetrics. Totals count every search since
+ * the program started or since the last reset; the Last attributes describe
+ * the most recent search.
+ */
+public interface SearchMetricsMXBean {
+
+    /**
+     * @return          the number of searches
+     */
+    long getSearches ();
+
+    /**
+     * @return          the nodes of every search
+     */
+    long getTotalNodes ();
+
+    /**
+     * @return          the leaf evaluations of every search
+     */
+    long getTotalEvaluations ();
+
+    /**
+     * @return          the cutoffs of every search
+     */
+    long getTotalCutoffs ();
+
+    /**
+     * @return          the percentage of cutoffs caused by the first move
+     */
+    double getFirstMoveCutoffRate ();
+
+    /**
+     * @return          the average number of moves searched before a cutoff
+     */
+    double getAverageCutoffIndex ();
+
+    /**
+     * @return          the percentage of table probes that found the position
+     */
+    double getTableHitRate ();
+
+    /**
+     * @return          the moves left out as useless by every search
+     */
+    long getTotalPrunedMoves ();
+
+    /**
+     * @return          the moves and roots searched again after a narrow window failed
+     */
+    long getTotalResearches ();
+
+    /**
+     * @return          the late quiet moves searched at a reduced depth
+     */
+    long getTotalReductions ();
+
+    /**
+     * @return          the quiet moves near the leaves skipped as futile
+     */
+    long getTotalFutilityPrunes ();
+
+    /**
+     * @return          the positions past the depth where only forcing moves were searched
+     */
+    long getTotalQuiescenceNodes ();
+
+    /**
+     * @return          the time spent searching, in milliseconds
+     */
+    long getTotalTimeMillis ();
+
+    /**
+     * @return          the depth completed by the last search
+     */
+    int getLastDepth ();
+
+    /**
+     * @return          the deepest ply reached by the last search
+     */
+    int getLastSelectiveDepth ();
+
+    /**
+     * @return          the nodes of the last search
+     */
+    long getLastNodes ();
+
+    /**
+     * @return          the nodes per second of the last search
+     */
+    long getLastNodesPerSecond ();
+
+    /**
+     * @return          the time of the last search, in milliseconds
+     */
+    long getLastTimeMillis ();
+
+    /**
+     * Set every counter back to zero.
+     */
+    void reset ();
+
+}
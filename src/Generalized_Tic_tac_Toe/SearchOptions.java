@@ -0,0 +1,128 @@
+package Generalized_Tic_tac_Toe;
+
+/**
+ * The switches of the selective parts of AlphaBetaAdvanced, so that engines
+ * with different settings can play each other or be timed side by side.
+ * Options are immutable; the with methods return a changed copy.
+ *
+ * Written as text, options are a comma separated list of changes to the
+ * defaults: nopvs, noasp or asp=N, nolmr, nofutility, and noqs or qs=N, for
+ * example "nolmr,asp=2000". "default" is the defaults unchanged.
+ */
+final class SearchOptions {
+
+    static final SearchOptions DEFAULT = new SearchOptions(true, 10000, true, true, 4);
+
+    final boolean principalVariation;
+    final int aspirationWindow;
+    final boolean lateMoveReductions;
+    final boolean futilityPruning;
+    final int quiescencePlies;
+
+    /**
+     * Construct SearchOptions.
+     * @param principalVariation    search the moves after the first with a null window
+     * @param aspirationWindow      the half width of the root window, 0 for the full window
+     * @param lateMoveReductions    search late quiet moves shallower first
+     * @param futilityPruning       skip quiet moves near the leaves that cannot reach the window
+     * @param quiescencePlies       the plies of blocks searched past the depth, 0 for none
+     */
+    SearchOptions (boolean principalVariation, int aspirationWindow, boolean lateMoveReductions, boolean futilityPruning,
+            int quiescencePlies) {
+        if (aspirationWindow < 0) {
+            throw new IllegalArgumentException("Aspiration window must not be negative.");
+        }
+        if (quiescencePlies < 0) {
+            throw new IllegalArgumentException("Quiescence plies must not be negative.");
+        }
+        this.principalVariation = principalVariation;
+        this.aspirationWindow = aspirationWindow;
+        this.lateMoveReductions = lateMoveReductions;
+        this.futilityPruning = futilityPruning;
+        this.quiescencePlies = quiescencePlies;
+    }
+
+    /**
+     * @param enabled       whether the moves after the first are searched with a null window
+     * @return              a copy with the principal variation search switched
+     */
+    SearchOptions withPrincipalVariation (boolean enabled) {
+        return new SearchOptions(enabled, aspirationWindow, lateMoveReductions, futilityPruning, quiescencePlies);
+    }
+
+    /**
+     * @param window        the half width of the root window, 0 for the full window
+     * @return              a copy with the aspiration window changed
+     */
+    SearchOptions withAspirationWindow (int window) {
+        return new SearchOptions(principalVariation, window, lateMoveReductions, futilityPruning, quiescencePlies);
+    }
+
+    /**
+     * @param enabled       whether late quiet moves are searched shallower first
+     * @return              a copy with the late move reductions switched
+     */
+    SearchOptions withLateMoveReductions (boolean enabled) {
+        return new SearchOptions(principalVariation, aspirationWindow, enabled, futilityPruning, quiescencePlies);
+    }
+
+    /**
+     * @param enabled       whether quiet moves that cannot reach the window are skipped
+     * @return              a copy with the futility pruning switched
+     */
+    SearchOptions withFutilityPruning (boolean enabled) {
+        return new SearchOptions(principalVariation, aspirationWindow, lateMoveReductions, enabled, quiescencePlies);
+    }
+
+    /**
+     * @param plies         the plies of blocks searched past the depth, 0 for none
+     * @return              a copy with the quiescence search changed
+     */
+    SearchOptions withQuiescencePlies (int plies) {
+        return new SearchOptions(principalVariation, aspirationWindow, lateMoveReductions, futilityPruning, plies);
+    }
+
+    /**
+     * Read options written as text.
+     * @param text          the changes to the defaults, comma separated
+     * @return              the options
+     */
+    static SearchOptions parse (String text) {
+        SearchOptions options = DEFAULT;
+        for (String flag : text.split(",")) {
+            flag = flag.trim();
+            if (flag.equals("default") || flag.isEmpty()) {
+                continue;
+            } else if (flag.equals("nopvs")) {
+                options = options.withPrincipalVariation(false);
+            } else if (flag.equals("noasp")) {
+                options = options.withAspirationWindow(0);
+            } else if (flag.startsWith("asp=")) {
+                options = options.withAspirationWindow(Integer.parseInt(flag.substring(4)));
+            } else if (flag.equals("nolmr")) {
+                options = options.withLateMoveReductions(false);
+            } else if (flag.equals("nofutility")) {
+                options = options.withFutilityPruning(false);
+            } else if (flag.equals("noqs")) {
+                options = options.withQuiescencePlies(0);
+            } else if (flag.startsWith("qs=")) {
+                options = options.withQuiescencePlies(Integer.parseInt(flag.substring(3)));
+            } else {
+                throw new IllegalArgumentException("Unknown search option " + flag + ".");
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public String toString () {
+        StringBuilder text = new StringBuilder();
+        if (!principalVariation) text.append(",nopvs");
+        if (aspirationWindow != DEFAULT.aspirationWindow) text.append(aspirationWindow == 0 ? ",noasp" : ",asp=" + aspirationWindow);
+        if (!lateMoveReductions) text.append(",nolmr");
+        if (!futilityPruning) text.append(",nofutility");
+        if (quiescencePlies != DEFAULT.quiescencePlies) text.append(quiescencePlies == 0 ? ",noqs" : ",qs=" + quiescencePlies);
+        return text.length() == 0 ? "default" : text.substring(1);
+    }
+
+}
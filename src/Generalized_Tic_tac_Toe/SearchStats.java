@@ -0,0 +1,221 @@
+package Generalized_Tic_tac_Toe;
+
+/**
+ * Counters describing what one search did: how many nodes it visited, how
+ * well the moves were ordered, how often the transposition table helped and
+ * how long it took.
+ *
+ * Each search thread counts into its own instance with plain field updates,
+ * and the instances are added up once the threads are done, so counting costs
+ * next to nothing.
+ */
+public final class SearchStats {
+
+    long nodes;
+    long evaluations;
+    long cutoffs;
+    long firstMoveCutoffs;
+    long cutoffIndexSum;
+    long tableProbes;
+    long tableHits;
+    long prunedMoves;
+    long researches;
+    long reductions;
+    long futilityPrunes;
+    long quiescenceNodes;
+    int depth;
+    int selectiveDepth;
+    long nanos;
+    int move = -1;
+    int score;
+
+    /**
+     * SearchStats are only created by the search.
+     */
+    SearchStats () {}
+
+    /**
+     * Add the counters of another search thread.
+     * @param other     the counters of the thread
+     */
+    void add (SearchStats other) {
+        nodes += other.nodes;
+        evaluations += other.evaluations;
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        cutoffIndexSum += other.cutoffIndexSum;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        prunedMoves += other.prunedMoves;
+        researches += other.researches;
+        reductions += other.reductions;
+        futilityPrunes += other.futilityPrunes;
+        quiescenceNodes += other.quiescenceNodes;
+        depth = Math.max(depth, other.depth);
+        selectiveDepth = Math.max(selectiveDepth, other.selectiveDepth);
+    }
+
+    /**
+     * Get the number of positions visited.
+     * @return          the number of nodes
+     */
+    public long getNodes () {
+        return nodes;
+    }
+
+    /**
+     * Get the number of positions scored by the evaluation function.
+     * @return          the number of leaf evaluations
+     */
+    public long getEvaluations () {
+        return evaluations;
+    }
+
+    /**
+     * Get the number of nodes where a move proved the node was not worth
+     * searching further.
+     * @return          the number of beta cutoffs
+     */
+    public long getCutoffs () {
+        return cutoffs;
+    }
+
+    /**
+     * Get the number of cutoffs caused by the first move searched.
+     * @return          the number of first-move cutoffs
+     */
+    public long getFirstMoveCutoffs () {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Get how many moves were searched, on average, before the move that
+     * caused a cutoff. 0 means the move ordering is perfect.
+     * @return          the average index of the cutoff move
+     */
+    public double getAverageCutoffIndex () {
+        return cutoffs == 0 ? 0 : (double) cutoffIndexSum / cutoffs;
+    }
+
+    /**
+     * Get the number of transposition table lookups.
+     * @return          the number of probes
+     */
+    public long getTableProbes () {
+        return tableProbes;
+    }
+
+    /**
+     * Get the number of transposition table lookups that found the position.
+     * @return          the number of hits
+     */
+    public long getTableHits () {
+        return tableHits;
+    }
+
+    /**
+     * Get the number of candidate moves left out because they can no longer
+     * be part of any line.
+     * @return          the number of pruned moves
+     */
+    public long getPrunedMoves () {
+        return prunedMoves;
+    }
+
+    /**
+     * Get the number of times a narrow window failed and a move or the root
+     * had to be searched again with a wider one.
+     * @return          the number of re-searches
+     */
+    public long getResearches () {
+        return researches;
+    }
+
+    /**
+     * Get the number of late quiet moves searched at a reduced depth.
+     * @return          the number of reductions
+     */
+    public long getReductions () {
+        return reductions;
+    }
+
+    /**
+     * Get the number of quiet moves near the leaves left out because they
+     * could not reach the window.
+     * @return          the number of futility prunes
+     */
+    public long getFutilityPrunes () {
+        return futilityPrunes;
+    }
+
+    /**
+     * Get the number of positions past the depth where only forcing moves
+     * were searched.
+     * @return          the number of quiescence nodes
+     */
+    public long getQuiescenceNodes () {
+        return quiescenceNodes;
+    }
+
+    /**
+     * Get the depth of the deepest iteration completed.
+     * @return          the depth in plies
+     */
+    public int getDepth () {
+        return depth;
+    }
+
+    /**
+     * Get the deepest ply any node was visited at, counting iterations that
+     * did not complete.
+     * @return          the maximum depth reached in plies
+     */
+    public int getSelectiveDepth () {
+        return selectiveDepth;
+    }
+
+    /**
+     * Get the time the search took.
+     * @return          the wall clock time in nanoseconds
+     */
+    public long getNanos () {
+        return nanos;
+    }
+
+    /**
+     * Get the move the search chose.
+     * @return          the move, or -1 if the search did not choose one
+     */
+    public int getMove () {
+        return move;
+    }
+
+    /**
+     * Get the score of the chosen move, from the point of view of O.
+     * @return          the score
+     */
+    public int getScore () {
+        return score;
+    }
+
+    /**
+     * Get the search speed.
+     * @return          the nodes searched per second
+     */
+    public long getNodesPerSecond () {
+        return nanos == 0 ? 0 : (long) (nodes * 1e9 / nanos);
+    }
+
+    @Override
+    public String toString () {
+        return "depth = " + depth + "/" + selectiveDepth + ", nodes = " + nodes + ", nps = " + getNodesPerSecond()
+                + ", evaluations = " + evaluations + ", pruned = " + prunedMoves + ", re-searches = " + researches
+                + ", reductions = " + reductions + ", futility prunes = " + futilityPrunes
+                + ", quiescence nodes = " + quiescenceNodes
+                + ", first-move cutoffs = " + (cutoffs == 0 ? 0 : 100 * firstMoveCutoffs / cutoffs) + "%"
+                + ", cutoff index = " + String.format("%.2f", getAverageCutoffIndex())
+                + ", table hits = " + (tableProbes == 0 ? 0 : 100 * tableHits / tableProbes) + "%"
+                + ", time = " + nanos / 1000000 + " ms";
+    }
+
+}
@@ -0,0 +1,143 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+/**
+ * Uses the Alpha-Beta Pruning algorithm to play a move on a SparseBoard.
+ *
+ * A plain fixed-depth negamax with alpha-beta pruning, with no transposition
+ * table, iterative deepening or quiescence search. It only looks at the
+ * candidate moves near the stones, orders them by SparseBoard.getMoveScore,
+ * and scores the leaves as O's winning window score less X's, so it stays
+ * usable on boards far too large for the dense engines.
+ */
+class SparseAlphaBeta {
+
+    // State of one search, so that games on different threads do not share it.
+    private final int maxPly;
+    private final long[][] moveBuffers;
+    private final int[][] scoreBuffers;
+    private long bestMove = Long.MIN_VALUE;
+
+    /**
+     * SparseAlphaBeta can only be instantiated by run.
+     * @param maxPly        the maximum depth
+     */
+    private SparseAlphaBeta (int maxPly) {
+        this.maxPly = maxPly;
+        this.moveBuffers = new long[maxPly][];
+        this.scoreBuffers = new int[maxPly][];
+    }
+
+    /**
+     * Execute the algorithm.
+     * @param board         the sparse Tic Tac Toe board to play on
+     * @param maxPly        the maximum depth
+     */
+    static void run (SparseBoard board, int maxPly) {
+        if (maxPly < 1) {
+            throw new IllegalArgumentException("Maximum depth must be greater than 0.");
+        }
+
+        SparseAlphaBeta search = new SparseAlphaBeta(maxPly);
+        search.alphaBeta(board, Integer.MIN_VALUE + 1, Integer.MAX_VALUE, 0);
+        if (search.bestMove != Long.MIN_VALUE) {
+            board.makeMove(search.bestMove);
+        }
+    }
+
+    /**
+     * The meat of the algorithm, scored from the side of the player to move.
+     * @param board         the sparse Tic Tac Toe board to play on
+     * @param alpha         the alpha value
+     * @param beta          the beta value
+     * @param currentPly    the current depth
+     * @return              the score of the board
+     */
+    private int alphaBeta (SparseBoard board, int alpha, int beta, int currentPly) {
+        if (currentPly == maxPly || board.isGameOver()) {
+            return evaluate(board, currentPly);
+        }
+
+        long[] moves = moveBuffer(board, currentPly);
+        int moveCount = board.copyCandidateMoves(moves);
+        orderMoves(board, moves, moveCount, currentPly);
+
+        for (int i = 0; i < moveCount; i++) {
+            board.makeMove(moves[i]);
+            int score = -alphaBeta(board, -beta, -alpha, currentPly + 1);
+            board.unmakeMove();
+
+            if (score > alpha) {
+                alpha = score;
+                if (currentPly == 0) {
+                    bestMove = moves[i];
+                }
+            }
+
+            // Pruning.
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Sort the moves of a ply by SparseBoard.getMoveScore, best first.
+     * @param board         the sparse Tic Tac Toe board to play on
+     * @param moves         the moves to sort
+     * @param moveCount     the number of moves
+     * @param currentPly    the current depth
+     */
+    private void orderMoves (SparseBoard board, long[] moves, int moveCount, int currentPly) {
+        int[] scores = scoreBuffers[currentPly];
+        for (int i = 0; i < moveCount; i++) {
+            int score = board.getMoveScore(moves[i]);
+            long move = moves[i];
+            int j = i;
+            for (; j > 0 && scores[j - 1] < score; j--) {
+                scores[j] = scores[j - 1];
+                moves[j] = moves[j - 1];
+            }
+            scores[j] = score;
+            moves[j] = move;
+        }
+    }
+
+    /**
+     * Get the buffer for the moves of a ply, so the search does not allocate
+     * an array per node. The buffer grows with the candidate moves.
+     * @param board         the sparse Tic Tac Toe board to play on
+     * @param currentPly    the current depth
+     * @return              an array large enough for every candidate move
+     */
+    private long[] moveBuffer (SparseBoard board, int currentPly) {
+        int needed = Math.max(1, board.getCandidateCount());
+        if (moveBuffers[currentPly] == null || moveBuffers[currentPly].length < needed) {
+            moveBuffers[currentPly] = new long[needed * 2];
+            scoreBuffers[currentPly] = new int[needed * 2];
+        }
+        return moveBuffers[currentPly];
+    }
+
+    /**
+     * Get the score of the board for the player to move. Takes depth into
+     * account, so nearer wins and later losses score better.
+     * @param board         the sparse Tic Tac Toe board to play on
+     * @param currentPly    the current depth
+     * @return              the score of the board
+     */
+    private static int evaluate (SparseBoard board, int currentPly) {
+        int score;
+        if (board.isGameOver() && board.getWinner() == Board.State.O) {
+            score = Integer.MAX_VALUE - currentPly;
+        } else if (board.isGameOver() && board.getWinner() == Board.State.X) {
+            score = Integer.MIN_VALUE + 1 + currentPly;
+        } else {
+            score = board.getScoreO() - board.getScoreX();
+        }
+        return board.getTurn() == Board.State.O ? score : -score;
+    }
+
+}
@@ -0,0 +1,532 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board.State;
+
+/**
+ * Represents a Tic Tac Toe board that only stores the cells that are in use.
+ *
+ * Board keeps arrays with an entry for every cell, which is fine for 15x15 but
+ * not for a 1000x1000 board, and impossible for an unbounded one. SparseBoard
+ * keeps the stones in a map keyed by their packed (x, y) coordinates, and the
+ * candidate moves as a map of stone counts around the stones. Winning windows
+ * are never stored: the windows through a move are looked at when the move is
+ * played, so memory grows with the number of stones, not with the board.
+ *
+ * A cell is identified by a long made of its x and y coordinates (see cell).
+ * Coordinates can be any int except Integer.MIN_VALUE, so a board of width 0
+ * is effectively unbounded. The rules and the winning window scores are the
+ * same as on Board.
+ */
+public class SparseBoard {
+
+    static final int FRONTIER_RADIUS = 2;
+
+    private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+    private static final int X_STONE = 1;
+    private static final int O_STONE = 2;
+
+    private final int width;
+    private final int m;
+    private final long windowMask;
+
+    private LongIntMap stones;
+    private LongIntMap neighbours;
+    private State playersTurn;
+    private State winner;
+    private int[] winningWindowsX;
+    private int[] winningWindowsO;
+    private int moveCount;
+    private boolean gameOver;
+    private long zobristKey;
+
+    // Undo stack, indexed by the move number. Grows with the game.
+    private long[] historyMove;
+    private State[] historyWinner;
+    private boolean[] historyGameOver;
+
+    /**
+     * Construct the sparse board.
+     * @param width     the number of rows and columns, or 0 for an unbounded board
+     * @param m         the number of stones in a row that wins
+     */
+    public SparseBoard (int width, int m) {
+        if (width < 0 || m < 1 || (width > 0 && m > width) || 2 * m - 1 > Long.SIZE) {
+            throw new IllegalArgumentException("Width must be 0 or at least M, and M between 1 and 32.");
+        }
+
+        this.width = width;
+        this.m = m;
+        windowMask = (1L << m) - 1;
+        winningWindowsX = new int[m + 1];
+        winningWindowsO = new int[m + 1];
+        stones = new LongIntMap(64);
+        neighbours = new LongIntMap(256);
+        historyMove = new long[64];
+        historyWinner = new State[64];
+        historyGameOver = new boolean[64];
+        playersTurn = State.X;
+        winner = State.Blank;
+    }
+
+    /**
+     * Pack a pair of coordinates into a cell.
+     * @param x         the x coordinate (column)
+     * @param y         the y coordinate (row)
+     * @return          the cell
+     */
+    public static long cell (int x, int y) {
+        return (long) x << 32 | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the x coordinate of a cell.
+     * @param cell      the cell
+     * @return          the x coordinate (column)
+     */
+    public static int x (long cell) {
+        return (int) (cell >> 32);
+    }
+
+    /**
+     * Get the y coordinate of a cell.
+     * @param cell      the cell
+     * @return          the y coordinate (row)
+     */
+    public static int y (long cell) {
+        return (int) cell;
+    }
+
+    /**
+     * Places an X or an O on the specified location depending on whose turn it is.
+     * @param x         the x coordinate of the location
+     * @param y         the y coordinate of the location
+     * @return          true if the location is on the board and has not already been played
+     */
+    public boolean move (int x, int y) {
+        return makeMove(cell(x, y));
+    }
+
+    /**
+     * Places an X or an O on a cell and remembers what it changed, so that the
+     * search can take the move back with unmakeMove.
+     * @param cell      the cell
+     * @return          true if the cell is on the board and has not already been played
+     */
+    public boolean makeMove (long cell) {
+        if (gameOver) {
+            throw new IllegalStateException("TicTacToe is over. No moves can be played.");
+        }
+
+        int x = x(cell);
+        int y = y(cell);
+        if (!isOnBoard(x, y) || stones.get(cell, 0) != 0) {
+            return false;
+        }
+
+        if (moveCount == historyMove.length) {
+            historyMove = java.util.Arrays.copyOf(historyMove, moveCount * 2);
+            historyWinner = java.util.Arrays.copyOf(historyWinner, moveCount * 2);
+            historyGameOver = java.util.Arrays.copyOf(historyGameOver, moveCount * 2);
+        }
+        historyMove[moveCount] = cell;
+        historyWinner[moveCount] = winner;
+        historyGameOver[moveCount] = gameOver;
+
+        stones.put(cell, playersTurn == State.X ? X_STONE : O_STONE);
+        zobristKey ^= zobrist(cell, playersTurn);
+        moveCount++;
+        updateNeighbours(x, y, 1);
+
+        // The game is a draw.
+        if (width > 0 && (long) moveCount == (long) width * width) {
+            winner = State.Blank;
+            gameOver = true;
+        }
+
+        checkWin(x, y, playersTurn);
+        shiftScoreWindow(x, y, playersTurn, 1);
+
+        playersTurn = (playersTurn == State.X) ? State.O : State.X;
+        return true;
+    }
+
+    /**
+     * Take back the most recent move.
+     */
+    public void unmakeMove () {
+        if (moveCount == 0) {
+            throw new IllegalStateException("There is no move to take back.");
+        }
+
+        moveCount--;
+        long cell = historyMove[moveCount];
+        int x = x(cell);
+        int y = y(cell);
+        State player = stones.get(cell, 0) == X_STONE ? State.X : State.O;
+
+        // The windows are counted with the stone still on the board.
+        shiftScoreWindow(x, y, player, -1);
+        stones.remove(cell);
+        zobristKey ^= zobrist(cell, player);
+        updateNeighbours(x, y, -1);
+
+        winner = historyWinner[moveCount];
+        gameOver = historyGameOver[moveCount];
+        playersTurn = player;
+    }
+
+    /**
+     * Check to see if the game is over (if there is a winner or a draw).
+     * @return          true if the game is over
+     */
+    public boolean isGameOver () {
+        return gameOver;
+    }
+
+    /**
+     * Check to see who's turn it is.
+     * @return          the player who's turn it is
+     */
+    public State getTurn () {
+        return playersTurn;
+    }
+
+    /**
+     * Check to see who won.
+     * @return          the player who won (or Blank if the game is a draw)
+     */
+    public State getWinner () {
+        if (!gameOver) {
+            throw new IllegalStateException("TicTacToe is not over yet.");
+        }
+        return winner;
+    }
+
+    /**
+     * Get the state of a cell.
+     * @param x         the x coordinate of the cell
+     * @param y         the y coordinate of the cell
+     * @return          the player occupying the cell, or Blank
+     */
+    public State getCell (int x, int y) {
+        int stone = stones.get(cell(x, y), 0);
+        return stone == X_STONE ? State.X : stone == O_STONE ? State.O : State.Blank;
+    }
+
+    /**
+     * Get the number of stones on the board.
+     * @return          the number of moves played
+     */
+    public int getMoveCount () {
+        return moveCount;
+    }
+
+    /**
+     * Get the Zobrist key of the position, updated with every move.
+     * @return          the 64-bit hash of the stones on the board
+     */
+    public long getZobristKey () {
+        return zobristKey;
+    }
+
+    /**
+     * Get the width of the board.
+     * @return          the number of rows and columns, or 0 if the board is unbounded
+     */
+    public int getBoardWidth () {
+        return width;
+    }
+
+    /**
+     * Get the number of stones in a row that wins the game.
+     * @return          M
+     */
+    public int getWinLength () {
+        return m;
+    }
+
+    /**
+     * Get the number of candidate moves: the empty cells with a stone within
+     * FRONTIER_RADIUS rows and columns.
+     * @return          the number of candidate moves
+     */
+    public int getCandidateCount () {
+        // Every stone is within the radius of itself, so it has an entry too.
+        return neighbours.size() - moveCount;
+    }
+
+    /**
+     * Copy the candidate moves into an array. On an empty board the only
+     * candidate is the centre, or (0, 0) on an unbounded board.
+     * @param moves     the array to fill, at least getCandidateCount long
+     * @return          the number of moves copied
+     */
+    public int copyCandidateMoves (long[] moves) {
+        if (moveCount == 0) {
+            moves[0] = width > 0 ? cell(width / 2, width / 2) : cell(0, 0);
+            return 1;
+        }
+
+        int count = 0;
+        for (int slot = 0; slot < neighbours.capacity(); slot++) {
+            if (neighbours.isUsed(slot) && stones.get(neighbours.keyAt(slot), 0) == 0) {
+                moves[count++] = neighbours.keyAt(slot);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the score of X from the winning windows, as on Board.
+     * @return          the score of X
+     */
+    public int getScoreX () {
+        int score = 0;
+        for (int i = 0; i < m; i++) {
+            score += winningWindowsX[i] * i * i;
+        }
+        return score;
+    }
+
+    /**
+     * Get the score of O from the winning windows, as on Board.
+     * @return          the score of O
+     */
+    public int getScoreO () {
+        int score = 0;
+        for (int i = 0; i < m; i++) {
+            score += winningWindowsO[i] * i;
+        }
+        return score;
+    }
+
+    /**
+     * Estimate how good an empty cell is for ordering moves, by counting the
+     * windows through it. Every window through the cell that one player has
+     * not blocked adds the square of one more than the other player's stones
+     * in it, so the cell scores for both attacking and blocking. Unlike
+     * Board.getMoveScore, no line shapes are recognised.
+     * @param cell      the cell
+     * @return          the score of the cell, higher is more promising
+     */
+    public int getMoveScore (long cell) {
+        int x = x(cell);
+        int y = y(cell);
+        int score = 0;
+
+        for (int[] direction : DIRECTIONS) {
+            long lineX = line(x, y, direction, X_STONE);
+            long lineO = line(x, y, direction, O_STONE);
+            long offBoard = offBoardLine(x, y, direction);
+
+            for (int j = 0; j < m; j++) {
+                if (((offBoard >>> j) & windowMask) != 0) continue;
+
+                long windowX = (lineX >>> j) & windowMask;
+                long windowO = (lineO >>> j) & windowMask;
+                if (windowO == 0) {
+                    int count = Long.bitCount(windowX) + 1;
+                    score += count * count;
+                }
+                if (windowX == 0) {
+                    int count = Long.bitCount(windowO) + 1;
+                    score += count * count;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Get a deep copy of the board, sharing nothing with the original.
+     * @return          the copy
+     */
+    public SparseBoard getDeepCopy () {
+        SparseBoard copy = new SparseBoard(width, m);
+        copy.stones = stones.copy();
+        copy.neighbours = neighbours.copy();
+        copy.playersTurn = playersTurn;
+        copy.winner = winner;
+        copy.winningWindowsX = winningWindowsX.clone();
+        copy.winningWindowsO = winningWindowsO.clone();
+        copy.moveCount = moveCount;
+        copy.gameOver = gameOver;
+        copy.zobristKey = zobristKey;
+        copy.historyMove = historyMove.clone();
+        copy.historyWinner = historyWinner.clone();
+        copy.historyGameOver = historyGameOver.clone();
+        return copy;
+    }
+
+    /**
+     * Check to see if a location is on the board.
+     * @param x         the x coordinate of the location
+     * @param y         the y coordinate of the location
+     * @return          true if the location is on the board
+     */
+    private boolean isOnBoard (int x, int y) {
+        if (width == 0) {
+            return x != Integer.MIN_VALUE && y != Integer.MIN_VALUE;
+        }
+        return x >= 0 && x < width && y >= 0 && y < width;
+    }
+
+    /**
+     * Gather the 2M - 1 cells of a line centred on a cell holding a given
+     * stone into the low bits of a long, as Geometry.line does for Board.
+     * @param x         the x coordinate of the centre cell
+     * @param y         the y coordinate of the centre cell
+     * @param direction the step between two neighbouring cells of the line
+     * @param stone     the stone to look for
+     * @return          the cells of the line holding the stone
+     */
+    private long line (int x, int y, int[] direction, int stone) {
+        long result = 0;
+        for (int k = 0; k < 2 * m - 1; k++) {
+            int cx = x + (k - (m - 1)) * direction[0];
+            int cy = y + (k - (m - 1)) * direction[1];
+            if (isOnBoard(cx, cy) && stones.get(cell(cx, cy), 0) == stone) {
+                result |= 1L << k;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gather the cells of a line that are off the board.
+     * @param x         the x coordinate of the centre cell
+     * @param y         the y coordinate of the centre cell
+     * @param direction the step between two neighbouring cells of the line
+     * @return          the cells of the line that are off the board
+     */
+    private long offBoardLine (int x, int y, int[] direction) {
+        long result = 0;
+        for (int k = 0; k < 2 * m - 1; k++) {
+            if (!isOnBoard(x + (k - (m - 1)) * direction[0], y + (k - (m - 1)) * direction[1])) {
+                result |= 1L << k;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check the four lines through the most recent move to see if there is a winner.
+     * @param x         the x coordinate of the most recently played move
+     * @param y         the y coordinate of the most recently played move
+     * @param player    the player who played the move
+     */
+    private void checkWin (int x, int y, State player) {
+        int stone = player == State.X ? X_STONE : O_STONE;
+        for (int[] direction : DIRECTIONS) {
+            long run = line(x, y, direction, stone);
+            for (int i = 1; i < m && run != 0; i++) {
+                run &= run >>> 1;
+            }
+            if (run != 0) {
+                winner = player;
+                gameOver = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move every unblocked window through a cell one step up or down the
+     * winning window counts of a player. The stone on the cell is counted in.
+     * A window of the opponent that the stone is the first to block leaves
+     * the opponent's counts, and comes back when the stone is taken back.
+     * @param x         the x coordinate of the cell
+     * @param y         the y coordinate of the cell
+     * @param player    the player who owns the stone on the cell
+     * @param step      1 when the stone has been placed, -1 when it is being removed
+     */
+    private void shiftScoreWindow (int x, int y, State player, int step) {
+        int[] scoreWindow = (player == State.X) ? winningWindowsX : winningWindowsO;
+        int[] otherWindow = (player == State.X) ? winningWindowsO : winningWindowsX;
+        int own = player == State.X ? X_STONE : O_STONE;
+        int other = player == State.X ? O_STONE : X_STONE;
+
+        for (int[] direction : DIRECTIONS) {
+            long ownLine = line(x, y, direction, own);
+            long otherLine = line(x, y, direction, other);
+            long offLine = offBoardLine(x, y, direction);
+
+            for (int j = 0; j < m; j++) {
+                int count = Long.bitCount((ownLine >>> j) & windowMask);
+                if (((offLine >>> j) & windowMask) != 0) continue;
+                if (((otherLine >>> j) & windowMask) != 0) {
+                    if (count == 1) otherWindow[Long.bitCount((otherLine >>> j) & windowMask)] -= step;
+                    continue;
+                }
+
+                scoreWindow[count - 1] -= step;
+                scoreWindow[count] += step;
+            }
+        }
+    }
+
+    /**
+     * Keep the stone counts around a cell up to date when a stone is placed on
+     * or removed from it. Cells without stones nearby are not stored at all.
+     * @param x         the x coordinate of the cell
+     * @param y         the y coordinate of the cell
+     * @param step      1 when the stone has been placed, -1 when it has been removed
+     */
+    private void updateNeighbours (int x, int y, int step) {
+        for (int dy = -FRONTIER_RADIUS; dy <= FRONTIER_RADIUS; dy++) {
+            for (int dx = -FRONTIER_RADIUS; dx <= FRONTIER_RADIUS; dx++) {
+                if (isOnBoard(x + dx, y + dy)) {
+                    neighbours.add(cell(x + dx, y + dy), step);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the Zobrist number of a stone. Computed by mixing the cell, since
+     * there is no table of cells to draw random numbers for.
+     * @param cell      the cell
+     * @param player    the player owning the stone
+     * @return          the number to xor into the key
+     */
+    private static long zobrist (long cell, State player) {
+        long z = cell * 0x9E3779B97F4A7C15L + (player == State.X ? 0x632BE59BD9B4E019L : 0x85157AF5L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString () {
+        if (moveCount == 0) {
+            return "(empty board)";
+        }
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int slot = 0; slot < stones.capacity(); slot++) {
+            if (stones.isUsed(slot)) {
+                long cell = stones.keyAt(slot);
+                minX = Math.min(minX, x(cell));
+                maxX = Math.max(maxX, x(cell));
+                minY = Math.min(minY, y(cell));
+                maxY = Math.max(maxY, y(cell));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("x ").append(minX).append("..").append(maxX)
+          .append(", y ").append(minY).append("..").append(maxY).append("\n");
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                State cell = getCell(x, y);
+                sb.append(cell == State.Blank ? "-" : cell.name()).append(" ");
+            }
+            if (y != maxY) {
+                sb.append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+}
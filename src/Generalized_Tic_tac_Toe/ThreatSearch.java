@@ -0,0 +1,176 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Looks for a forced win made only of threats (threat-space search).
+ *
+ * The attacker only plays moves that threaten to win: a four, a window with
+ * M - 1 of its stones that the defender must block, or an open three, a line
+ * with at least two windows of M - 2 stones that becomes an unstoppable four if
+ * it is ignored. The defender only plays the cells that stop the threat. This
+ * keeps the tree narrow enough to read sequences far deeper than the full
+ * width search can, in the positions where such a sequence exists.
+ *
+ * Fours alone (victory by continuous fours) are always tried. Open threes are
+ * only tried when the defender has no window with M - 2 stones, because the
+ * defender could otherwise answer a three with a four of its own, which this
+ * search does not follow.
+ */
+class ThreatSearch {
+
+    private final Board board;
+    private final int maxNodes;
+    private final long stopTime;
+    private final AtomicBoolean cancelled;
+    private final int[][] candidates;
+    private final int[][] replies;
+    private int nodes;
+
+    /**
+     * ThreatSearch can only be instantiated by findWin.
+     * @param board         the Tic Tac Toe board to search
+     * @param maxDepth      the maximum number of attacking moves
+     * @param maxNodes      the number of positions to give up after
+     * @param stopTime      the System.nanoTime value at which to give up
+     * @param cancelled     set by another thread to give up early
+     */
+    private ThreatSearch (Board board, int maxDepth, int maxNodes, long stopTime, AtomicBoolean cancelled) {
+        int cells = board.getBoardWidth() * board.getBoardWidth();
+        this.board = board;
+        this.maxNodes = maxNodes;
+        this.stopTime = stopTime;
+        this.cancelled = cancelled;
+        candidates = new int[maxDepth + 1][cells];
+        replies = new int[maxDepth + 1][8 * board.getWinLength()];
+    }
+
+    /**
+     * Look for a forced win for the player to move.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param maxDepth      the maximum number of attacking moves
+     * @param maxNodes      the number of positions to give up after
+     * @return              the first move of a forced win, or -1 if none was found
+     */
+    static int findWin (Board board, int maxDepth, int maxNodes) {
+        return findWin(board, maxDepth, maxNodes, Long.MAX_VALUE, new AtomicBoolean());
+    }
+
+    /**
+     * Look for a forced win for the player to move, giving up at a deadline
+     * or when cancelled.
+     * @param board         the Tic Tac Toe board to search, left as it was found
+     * @param maxDepth      the maximum number of attacking moves
+     * @param maxNodes      the number of positions to give up after
+     * @param stopTime      the System.nanoTime value at which to give up
+     * @param cancelled     set by another thread to give up early
+     * @return              the first move of a forced win, or -1 if none was found
+     */
+    static int findWin (Board board, int maxDepth, int maxNodes, long stopTime, AtomicBoolean cancelled) {
+        if (maxDepth < 1 || board.isGameOver()) {
+            return -1;
+        }
+        return new ThreatSearch(board, maxDepth, maxNodes, stopTime, cancelled).attack(maxDepth);
+    }
+
+    /**
+     * Try every threat of the player to move.
+     * @param depth         the number of attacking moves left
+     * @return              a move that wins by force, or -1
+     */
+    private int attack (int depth) {
+        if (++nodes > maxNodes) {
+            return -1;
+        }
+        if ((nodes & 63) == 0 && (System.nanoTime() > stopTime || cancelled.get())) {
+            // Out of time: every later call gives up too.
+            nodes = maxNodes;
+            return -1;
+        }
+
+        int m = board.getWinLength();
+        Board.State attacker = board.getTurn();
+        Board.State defender = (attacker == Board.State.X) ? Board.State.O : Board.State.X;
+        int[] moves = candidates[depth];
+        int moveCount = board.copyCandidateMoves(moves);
+
+        if (board.getWinningWindows(attacker, m - 1) > 0) {
+            for (int i = 0; i < moveCount; i++) {
+                if (board.isWinningMove(moves[i], attacker)) {
+                    return moves[i];
+                }
+            }
+        }
+
+        boolean threes = m >= 4 && board.getWinningWindows(defender, m - 2) == 0;
+        int needed = threes ? m - 3 : m - 2;
+        if (depth == 0 || board.getWinningWindows(attacker, needed) + board.getWinningWindows(attacker, m - 2) == 0) {
+            return -1;
+        }
+
+        // A defender threatening to win leaves only one move: blocking it.
+        if (board.getWinningWindows(defender, m - 1) > 0) {
+            int forced = -1;
+            for (int i = 0; i < moveCount; i++) {
+                if (board.isWinningMove(moves[i], defender)) {
+                    if (forced != -1) {
+                        return -1;
+                    }
+                    forced = moves[i];
+                }
+            }
+            if (forced != -1) {
+                moves[0] = forced;
+                moveCount = 1;
+            }
+        }
+
+        int[] cells = replies[depth];
+        for (int i = 0; i < moveCount; i++) {
+            int theMove = moves[i];
+            board.makeMove(theMove);
+
+            boolean win = false;
+            if (!board.isGameOver()) {
+                int threats = board.getThreatCells(theMove, attacker, m - 1, cells);
+                if (threats >= 2) {
+                    win = true;
+                } else if (threats == 1) {
+                    win = defend(cells, threats, depth);
+                } else if (threes) {
+                    threats = board.getThreatCells(theMove, attacker, m - 2, cells);
+                    win = threats > 0 && defend(cells, threats, depth);
+                }
+            }
+
+            board.unmakeMove();
+            if (win) {
+                return theMove;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Try every reply of the defender to a threat.
+     * @param cells         the cells that stop the threat
+     * @param cellCount     the number of cells
+     * @param depth         the number of attacking moves left
+     * @return              true if the attacker still wins after each of them
+     */
+    private boolean defend (int[] cells, int cellCount, int depth) {
+        for (int i = 0; i < cellCount; i++) {
+            board.makeMove(cells[i]);
+            boolean refuted = board.isGameOver() || attack(depth - 1) == -1;
+            board.unmakeMove();
+
+            if (refuted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,448 @@
+package Generalized_Tic_tac_Toe;
+
+import Generalized_Tic_tac_Toe.Board;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Plays engines against each other without a human, many games at once, and
+ * reports how they did.
+ *
+ * Every pair of engines plays the same number of games, swapping X and O after
+ * each game. A game starts with a few random moves drawn from a seeded
+ * generator, so that deterministic engines do not replay one game over and
+ * over, and the same seed gives the same openings. The games run on a fixed
+ * pool of threads; every game has its own board and every move is searched
+ * on the thread of its game alone, the mcts engine included. Each advanced
+ * engine has a transposition table of its own, shared by its games but not
+ * with the other engines, so that two engines compared against each other
+ * never read what the other one searched.
+ *
+ * The report gives wins, draws and losses, Elo ratings fitted to all the
+ * results, the Elo difference of every pair with a 95% margin, games per
+ * second and percentiles of the time each engine took per move.
+ */
+public class Tournament {
+
+    // The number of entries of the transposition table of each advanced engine.
+    private static final int TABLE_SIZE = 1 << 20;
+
+    /**
+     * An engine and the name it is reported under.
+     */
+    static final class Entrant {
+
+        final String name;
+        final Consumer<Board> engine;
+
+        /**
+         * Construct Entrant.
+         * @param name      the name of the engine
+         * @param engine    plays one move on the board it is given
+         */
+        Entrant (String name, Consumer<Board> engine) {
+            this.name = name;
+            this.engine = engine;
+        }
+
+    }
+
+    /**
+     * The outcome of one game.
+     */
+    private static final class Game {
+
+        final int x;
+        final int o;
+        final Board.State winner;
+        final long[] nanosX;
+        final long[] nanosO;
+
+        /**
+         * Construct Game.
+         * @param x         the entrant that played X
+         * @param o         the entrant that played O
+         * @param winner    the winner, or Blank for a draw
+         * @param nanosX    the time of each move of X
+         * @param nanosO    the time of each move of O
+         */
+        Game (int x, int o, Board.State winner, long[] nanosX, long[] nanosO) {
+            this.x = x;
+            this.o = o;
+            this.winner = winner;
+            this.nanosX = nanosX;
+            this.nanosO = nanosO;
+        }
+
+    }
+
+    private final int width;
+    private final int m;
+    private final int openingMoves;
+    private final long seed;
+    private final Entrant[] entrants;
+
+    // Results, from the point of view of the first entrant of each pair.
+    private final int[][] wins;
+    private final int[][] draws;
+    private final long[][] nanos;
+    private final int[] moveCounts;
+
+    /**
+     * Construct Tournament.
+     * @param width         the number of rows and columns of the board
+     * @param m             the number of stones in a row that wins
+     * @param openingMoves  the number of random moves at the start of each game
+     * @param seed          the seed of the random moves
+     * @param entrants      the engines
+     */
+    Tournament (int width, int m, int openingMoves, long seed, Entrant... entrants) {
+        if (entrants.length < 2) {
+            throw new IllegalArgumentException("A tournament needs at least 2 engines.");
+        }
+        if (openingMoves < 0 || openingMoves >= width * width) {
+            throw new IllegalArgumentException("Opening moves must be between 0 and the number of cells.");
+        }
+
+        this.width = width;
+        this.m = m;
+        this.openingMoves = openingMoves;
+        this.seed = seed;
+        this.entrants = entrants;
+        wins = new int[entrants.length][entrants.length];
+        draws = new int[entrants.length][entrants.length];
+        nanos = new long[entrants.length][1024];
+        moveCounts = new int[entrants.length];
+    }
+
+    /**
+     * Make an engine from its description: random, minimax, alphabeta,
+     * advanced, mcts or solved, optionally followed by a colon and a depth, or
+     * for advanced a time per move such as advanced:200ms. Advanced may be
+     * followed by another colon and its SearchOptions, such as
+     * advanced:200ms:nolmr,nofutility. Mcts takes a number of playouts or a
+     * time per move, such as mcts:5000 or mcts:200ms.
+     * @param spec      the description
+     * @return          the engine
+     */
+    static Entrant parse (String spec) {
+        String[] parts = spec.split(":", 3);
+        String limit = parts.length > 1 ? parts[1] : null;
+        if (parts.length > 2 && !parts[0].equals("advanced")) {
+            throw new IllegalArgumentException("Only advanced takes search options: " + spec + ".");
+        }
+
+        switch (parts[0]) {
+            case "random":
+                return new Entrant(spec, Algorithms::random);
+            case "minimax":
+                if (limit == null) return new Entrant(spec, Algorithms::miniMax);
+                int miniMaxPly = Integer.parseInt(limit);
+                return new Entrant(spec, board -> Algorithms.miniMax(board, miniMaxPly));
+            case "alphabeta":
+                if (limit == null) return new Entrant(spec, Algorithms::alphaBetaPruning);
+                int alphaBetaPly = Integer.parseInt(limit);
+                return new Entrant(spec, board -> Algorithms.alphaBetaPruning(board, alphaBetaPly));
+            case "advanced":
+                SearchOptions options = parts.length > 2 ? SearchOptions.parse(parts[2]) : SearchOptions.DEFAULT;
+                TranspositionTable table = new TranspositionTable(TABLE_SIZE);
+                if (limit != null && limit.endsWith("ms")) {
+                    Duration budget = Duration.ofMillis(Long.parseLong(limit.substring(0, limit.length() - 2)));
+                    return new Entrant(spec, board -> Algorithms.alphaBetaAdvanced(board, budget, options, table));
+                }
+                int advancedPly = (limit == null) ? AlphaBetaAdvanced.getDefaultPly() : Integer.parseInt(limit);
+                return new Entrant(spec, board -> Algorithms.alphaBetaAdvanced(board, advancedPly, options, table));
+            case "mcts":
+                if (limit == null) return new Entrant(spec, Algorithms::monteCarlo);
+                if (limit.endsWith("ms")) {
+                    Duration budget = Duration.ofMillis(Long.parseLong(limit.substring(0, limit.length() - 2)));
+                    return new Entrant(spec, board -> Algorithms.monteCarlo(board, budget));
+                }
+                int playouts = Integer.parseInt(limit);
+                return new Entrant(spec, board -> Algorithms.monteCarlo(board, playouts));
+            case "solved":
+                return new Entrant(spec, Algorithms::solved);
+            default:
+                throw new IllegalArgumentException("Unknown engine " + spec + ".");
+        }
+    }
+
+    /**
+     * Play every pair of engines against each other.
+     * @param gamesPerPair  the number of games of each pair
+     * @param threads       the number of games played at once
+     * @return              the time the games took, in nanoseconds
+     */
+    long run (int gamesPerPair, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Tournament game");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Game> games = new ExecutorCompletionService<>(pool);
+        long start = System.nanoTime();
+
+        int submitted = 0;
+        for (int i = 0; i < entrants.length; i++) {
+            for (int j = i + 1; j < entrants.length; j++) {
+                for (int g = 0; g < gamesPerPair; g++) {
+                    int x = (g % 2 == 0) ? i : j;
+                    int o = (g % 2 == 0) ? j : i;
+                    long gameSeed = seed + submitted;
+                    games.submit(() -> play(x, o, gameSeed));
+                    submitted++;
+                }
+            }
+        }
+
+        try {
+            for (int n = 0; n < submitted; n++) {
+                record(games.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The tournament was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A game failed.", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Play one game.
+     * @param x             the entrant that plays X
+     * @param o             the entrant that plays O
+     * @param gameSeed      the seed of the opening moves
+     * @return              the outcome
+     */
+    private Game play (int x, int o, long gameSeed) {
+        Board board = new Board(width, m);
+        java.util.Random random = new java.util.Random(gameSeed);
+        for (int i = 0; i < openingMoves && !board.isGameOver(); i++) {
+            IntSet moves = board.getAvailableMoves();
+            board.move(moves.get(random.nextInt(moves.size())));
+        }
+
+        long[] nanosX = new long[width * width];
+        long[] nanosO = new long[width * width];
+        int movesX = 0;
+        int movesO = 0;
+
+        while (!board.isGameOver()) {
+            boolean xToMove = board.getTurn() == Board.State.X;
+            Entrant entrant = entrants[xToMove ? x : o];
+            int empty = board.getAvailableMoves().size();
+
+            long start = System.nanoTime();
+            entrant.engine.accept(board);
+            long elapsed = System.nanoTime() - start;
+
+            if (board.getAvailableMoves().size() != empty - 1) {
+                throw new IllegalStateException(entrant.name + " did not play exactly one move.");
+            }
+            if (xToMove) {
+                nanosX[movesX++] = elapsed;
+            } else {
+                nanosO[movesO++] = elapsed;
+            }
+        }
+        return new Game(x, o, board.getWinner(), Arrays.copyOf(nanosX, movesX), Arrays.copyOf(nanosO, movesO));
+    }
+
+    /**
+     * Add a game to the results. Only called by the thread running the tournament.
+     * @param game          the outcome
+     */
+    private void record (Game game) {
+        if (game.winner == Board.State.X) {
+            wins[game.x][game.o]++;
+        } else if (game.winner == Board.State.O) {
+            wins[game.o][game.x]++;
+        } else {
+            draws[game.x][game.o]++;
+            draws[game.o][game.x]++;
+        }
+        addTimes(game.x, game.nanosX);
+        addTimes(game.o, game.nanosO);
+    }
+
+    /**
+     * Keep the move times of an entrant.
+     * @param entrant       the entrant
+     * @param times         the time of each of its moves in a game
+     */
+    private void addTimes (int entrant, long[] times) {
+        int count = moveCounts[entrant];
+        if (count + times.length > nanos[entrant].length) {
+            nanos[entrant] = Arrays.copyOf(nanos[entrant], Math.max(2 * nanos[entrant].length, count + times.length));
+        }
+        System.arraycopy(times, 0, nanos[entrant], count, times.length);
+        moveCounts[entrant] = count + times.length;
+    }
+
+    /**
+     * Fit an Elo rating to every entrant from all the results (the
+     * Bradley-Terry model, solved by minorization-maximization). Each pair is
+     * credited with one extra drawn game so that an engine that never lost or
+     * never won still gets a finite rating.
+     * @return              the ratings, averaging 0
+     */
+    double[] ratings () {
+        int n = entrants.length;
+        double[] strength = new double[n];
+        Arrays.fill(strength, 1);
+
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            double[] next = new double[n];
+            for (int i = 0; i < n; i++) {
+                double score = 0;
+                double denominator = 0;
+                for (int j = 0; j < n; j++) {
+                    if (i == j) continue;
+                    double games = wins[i][j] + wins[j][i] + draws[i][j] + 1;
+                    score += wins[i][j] + 0.5 * draws[i][j] + 0.5;
+                    denominator += games / (strength[i] + strength[j]);
+                }
+                next[i] = score / denominator;
+            }
+            strength = next;
+        }
+
+        double[] elo = new double[n];
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            elo[i] = 400 * Math.log10(strength[i]);
+            mean += elo[i] / n;
+        }
+        for (int i = 0; i < n; i++) {
+            elo[i] -= mean;
+        }
+        return elo;
+    }
+
+    /**
+     * Convert an expected score to an Elo difference.
+     * @param score         the score, between 0 and 1
+     * @return              the Elo difference
+     */
+    private static double eloDifference (double score) {
+        double clamped = Math.min(Math.max(score, 1e-3), 1 - 1e-3);
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+
+    /**
+     * Get a percentile of the move times of an entrant.
+     * @param sorted        the move times, sorted
+     * @param count         the number of move times
+     * @param percentile    the percentile, between 0 and 100
+     * @return              the time in milliseconds
+     */
+    private static double percentile (long[] sorted, int count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    /**
+     * Print the results.
+     * @param elapsed       the time the games took, in nanoseconds
+     * @param threads       the number of games played at once
+     */
+    void report (long elapsed, int threads) {
+        int n = entrants.length;
+        int totalGames = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                totalGames += wins[i][j] + wins[j][i] + draws[i][j];
+            }
+        }
+        System.out.printf("Played %d games on a %dx%d board with %d in a row in %.1f s, %.1f games/s on %d threads.%n%n",
+                totalGames, width, width, m, elapsed / 1e9, totalGames * 1e9 / elapsed, threads);
+
+        double[] elo = ratings();
+        int nameWidth = 20;
+        for (Entrant entrant : entrants) {
+            nameWidth = Math.max(nameWidth, entrant.name.length());
+        }
+        String nameColumn = "%-" + nameWidth + "s";
+        System.out.printf(nameColumn + " %6s %6s %6s %6s %7s %7s %9s %9s %9s %9s%n",
+                "engine", "games", "wins", "draws", "losses", "score", "elo", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (int i = 0; i < n; i++) {
+            int won = 0, drawn = 0, lost = 0;
+            for (int j = 0; j < n; j++) {
+                won += wins[i][j];
+                drawn += draws[i][j];
+                lost += wins[j][i];
+            }
+            int games = won + drawn + lost;
+            long[] sorted = Arrays.copyOf(nanos[i], moveCounts[i]);
+            Arrays.sort(sorted);
+            System.out.printf(nameColumn + " %6d %6d %6d %6d %6.1f%% %+7.0f %9.2f %9.2f %9.2f %9.2f%n",
+                    entrants[i].name, games, won, drawn, lost, games == 0 ? 0 : 100 * (won + 0.5 * drawn) / games, elo[i],
+                    percentile(sorted, sorted.length, 50), percentile(sorted, sorted.length, 90),
+                    percentile(sorted, sorted.length, 99), percentile(sorted, sorted.length, 100));
+        }
+
+        System.out.println();
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int games = wins[i][j] + wins[j][i] + draws[i][j];
+                if (games == 0) continue;
+
+                double score = (wins[i][j] + 0.5 * draws[i][j]) / games;
+                double variance = (wins[i][j] * (1 - score) * (1 - score) + draws[i][j] * (0.5 - score) * (0.5 - score)
+                        + wins[j][i] * score * score) / games;
+                double margin = 1.96 * Math.sqrt(variance / games);
+                double error = (eloDifference(score + margin) - eloDifference(score - margin)) / 2;
+                System.out.printf("%s vs %s: +%d =%d -%d, elo %+.0f +/- %.0f%n", entrants[i].name, entrants[j].name,
+                        wins[i][j], draws[i][j], wins[j][i], eloDifference(score), error);
+            }
+        }
+    }
+
+    /**
+     * Run a tournament from the command line, for example
+     * "7 4 100 4 2 random alphabeta:2 advanced:3" for 100 games per pair on a
+     * 7x7 board with 4 in a row, 4 games at a time and 2 random opening moves.
+     * @param args      width, M, games per pair, threads, opening moves and the engines
+     */
+    public static void main (String[] args) {
+        if (args.length < 7) {
+            System.out.println("Usage: Tournament width m gamesPerPair threads openingMoves engine engine...");
+            System.out.println("Engines: random, minimax[:ply], alphabeta[:ply], advanced[:ply|:<millis>ms[:options]], mcts[:playouts|:<millis>ms], solved");
+            return;
+        }
+
+        int width = Integer.parseInt(args[0]);
+        int m = Integer.parseInt(args[1]);
+        int gamesPerPair = Integer.parseInt(args[2]);
+        int threads = Integer.parseInt(args[3]);
+        int openingMoves = Integer.parseInt(args[4]);
+
+        List<Entrant> entrants = new ArrayList<>();
+        for (int i = 5; i < args.length; i++) {
+            entrants.add(parse(args[i]));
+        }
+
+        AlphaBetaAdvanced.setVerbose(false);
+        // The games already fill the threads, so an mcts engine searches only
+        // on the thread of its game, as every other engine does.
+        MonteCarlo.setThreadCount(1);
+        Tournament tournament = new Tournament(width, m, openingMoves, 1, entrants.toArray(new Entrant[0]));
+        tournament.report(tournament.run(gamesPerPair, threads), threads);
+    }
+
+}
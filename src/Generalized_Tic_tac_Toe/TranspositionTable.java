@@ -0,0 +1,166 @@
+package Generalized_Tic_tac_Toe;
+
+/**
+ * A fixed-size table of previously searched positions, indexed by the Zobrist
+ * key of the board.
+ *
+ * Each entry is packed into a single long holding the score, the best move, the
+ * remaining depth, the kind of bound and the search generation it was stored in.
+ * The key is stored xor-ed with the entry, so a probe only returns an entry when
+ * both words belong to the same store. Entries live in buckets of two slots: a
+ * slot holding the same position is always replaced, otherwise the slot from an
+ * older search or with the shallower depth gives way.
+ */
+class TranspositionTable {
+
+    static final int EXACT = 0;
+    static final int LOWER_BOUND = 1;
+    static final int UPPER_BOUND = 2;
+
+    /**
+     * Returned by probe when the position is not in the table. No stored entry
+     * can take this value because the bound bits are never both set.
+     */
+    static final long MISS = -1L;
+
+    private static final int MOVE_SHIFT = 32;
+    private static final int DEPTH_SHIFT = 53;
+    private static final int FLAG_SHIFT = 60;
+    private static final int GENERATION_SHIFT = 62;
+    private static final long MOVE_MASK = (1L << 21) - 1;
+    private static final long DEPTH_MASK = (1L << 7) - 1;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private int generation;
+
+    /**
+     * Construct an empty table.
+     * @param size      the number of entries, rounded down to a power of two
+     */
+    TranspositionTable (int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("The table must hold at least 2 entries.");
+        }
+        int capacity = Integer.highestOneBit(size);
+        keys = new long[capacity];
+        entries = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Start a new search. Entries stored by earlier searches are replaced first.
+     */
+    void newSearch () {
+        generation = (generation + 1) & 3;
+    }
+
+    /**
+     * Remove every entry from the table.
+     */
+    void clear () {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(entries, 0);
+    }
+
+    /**
+     * Get the number of entries the table can hold.
+     * @return          the capacity of the table
+     */
+    int size () {
+        return entries.length;
+    }
+
+    /**
+     * Look up a position.
+     * @param key       the Zobrist key of the position
+     * @return          the packed entry, or MISS
+     */
+    long probe (long key) {
+        int bucket = (int) key & mask & ~1;
+        for (int slot = bucket; slot <= bucket + 1; slot++) {
+            long entry = entries[slot];
+            if ((keys[slot] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Store the result of searching a position.
+     * @param key       the Zobrist key of the position
+     * @param score     the score, already adjusted with toTable
+     * @param move      the best move, or -1 if there is none
+     * @param depth     the remaining depth the position was searched to
+     * @param flag      EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    void store (long key, int score, int move, int depth, int flag) {
+        int bucket = (int) key & mask & ~1;
+        int slot = bucket;
+
+        if ((keys[bucket + 1] ^ entries[bucket + 1]) == key) {
+            slot = bucket + 1;
+        } else if ((keys[bucket] ^ entries[bucket]) != key
+                && priority(entries[bucket + 1]) < priority(entries[bucket])) {
+            slot = bucket + 1;
+        }
+
+        long entry = (score & 0xFFFFFFFFL)
+                | ((move + 1) & MOVE_MASK) << MOVE_SHIFT
+                | (Math.min(depth, (int) DEPTH_MASK) & DEPTH_MASK) << DEPTH_SHIFT
+                | (long) flag << FLAG_SHIFT
+                | (long) generation << GENERATION_SHIFT;
+        entries[slot] = entry;
+        keys[slot] = key ^ entry;
+    }
+
+    /**
+     * Rank an entry for replacement. Entries from the current search rank above
+     * any older entry, then deeper entries rank above shallower ones.
+     * @param entry     the packed entry
+     * @return          the rank, lower is replaced first
+     */
+    private int priority (long entry) {
+        int current = (int) (entry >>> GENERATION_SHIFT) == generation ? 1 << 8 : 0;
+        return current + depth(entry);
+    }
+
+    /**
+     * Get the score of an entry.
+     * @param entry     the packed entry
+     * @return          the score, to be adjusted with fromTable
+     */
+    static int score (long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Get the best move of an entry.
+     * @param entry     the packed entry
+     * @return          the best move, or -1 if there is none
+     */
+    static int move (long entry) {
+        return (int) ((entry >>> MOVE_SHIFT) & MOVE_MASK) - 1;
+    }
+
+    /**
+     * Get the remaining depth of an entry.
+     * @param entry     the packed entry
+     * @return          the depth the position was searched to
+     */
+    static int depth (long entry) {
+        return (int) ((entry >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    /**
+     * Get the kind of bound of an entry.
+     * @param entry     the packed entry
+     * @return          EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    static int flag (long entry) {
+        return (int) (entry >>> FLAG_SHIFT) & 3;
+    }
+
+}